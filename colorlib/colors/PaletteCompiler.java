@@ -0,0 +1,176 @@
+/*
+ * Copyright 2014 Martin Brabham
+ * Copyright 2014 Daniel Velazco
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+
+import com.holoyolostudios.colorvision.colorlib.colors.ColorKdTree;
+import com.holoyolostudios.colorvision.colorlib.colors.ColorLookupTable;
+import com.holoyolostudios.colorvision.colorlib.colors.ColorPalette;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+
+/**
+ * PaletteCompiler
+ * <p/>
+ * Compiles colors.csv (shade,name,#rrggbb[,h,s,v]) into the binary palette format described in
+ * {@link ColorPalette}, including a fully resolved 5-6-5 {@link ColorLookupTable}.
+ * <p/>
+ * Usage: java PaletteCompiler colors.csv colors.pal
+ *
+ * @author Daniel Velazco
+ * @author Martin Brabham
+ */
+public class PaletteCompiler {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: java PaletteCompiler <colors.csv> <colors.pal>");
+            System.exit(1);
+        }
+
+        // Parse the CSV
+        ArrayList<String> shades = new ArrayList<String>();
+        ArrayList<String> names = new ArrayList<String>();
+        ArrayList<Integer> colors = new ArrayList<Integer>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(args[0]), "UTF-8"));
+        try {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.length() == 0) {
+                    continue;
+                }
+                String[] fields = line.split(",");
+                if (fields.length < 3 || !fields[2].matches("#[0-9a-fA-F]{6}")) {
+                    throw new IOException("Invalid palette entry on line " + lineNumber + ": " + line);
+                }
+                shades.add(fields[0]);
+                names.add(fields[1]);
+                colors.add(Integer.parseInt(fields[2].substring(1), 16));
+            }
+        } finally {
+            reader.close();
+        }
+
+        int size = names.size();
+        int[] reds = new int[size];
+        int[] greens = new int[size];
+        int[] blues = new int[size];
+        for (int i = 0; i < size; i++) {
+            int color = colors.get(i);
+            reds[i] = (color >> 16) & 0xFF;
+            greens[i] = (color >> 8) & 0xFF;
+            blues[i] = color & 0xFF;
+        }
+        ColorPalette palette = new ColorPalette(shades.toArray(new String[size]), names.toArray(new String[size]),
+                reds, greens, blues);
+        if (palette.getShadeCount() > 255) {
+            throw new IOException("Too many shades: " + palette.getShadeCount());
+        }
+
+        // Intern every string once in the string table
+        LinkedHashMap<String, Integer> stringOffsets = new LinkedHashMap<String, Integer>();
+        ByteArrayOutputStream strings = new ByteArrayOutputStream();
+        DataOutputStream stringsOut = new DataOutputStream(strings);
+        int[] shadeOffsets = new int[palette.getShadeCount()];
+        for (int i = 0; i < shadeOffsets.length; i++) {
+            shadeOffsets[i] = intern(palette.getShadeName(i), stringOffsets, stringsOut);
+        }
+        int[] nameOffsets = new int[size];
+        for (int i = 0; i < size; i++) {
+            nameOffsets[i] = intern(palette.getName(i), stringOffsets, stringsOut);
+        }
+        stringsOut.flush();
+
+        // Resolve the lookup table
+        ColorLookupTable lookupTable = new ColorLookupTable(palette, new ColorKdTree(palette));
+        short[] cells = new short[lookupTable.getCellCount()];
+        lookupTable.exportCells(cells);
+
+        int stringsOffset = ColorPalette.HEADER_SIZE + 4 * size + 4 * shadeOffsets.length + 4 * size;
+        int lookupOffset = stringsOffset + strings.size();
+        int padding = lookupOffset & 1;
+        lookupOffset += padding;
+
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(args[1]));
+        try {
+            out.writeInt(ColorPalette.MAGIC);
+            out.writeInt(ColorPalette.VERSION);
+            out.writeInt(size);
+            out.writeInt(shadeOffsets.length);
+            out.writeByte(ColorLookupTable.DEFAULT_RED_BITS);
+            out.writeByte(ColorLookupTable.DEFAULT_GREEN_BITS);
+            out.writeByte(ColorLookupTable.DEFAULT_BLUE_BITS);
+            out.writeByte(0);
+            out.writeInt(stringsOffset);
+            out.writeInt(lookupOffset);
+            for (int i = 0; i < size; i++) {
+                out.writeByte(reds[i]);
+            }
+            for (int i = 0; i < size; i++) {
+                out.writeByte(greens[i]);
+            }
+            for (int i = 0; i < size; i++) {
+                out.writeByte(blues[i]);
+            }
+            for (int i = 0; i < size; i++) {
+                out.writeByte(palette.getShadeId(i));
+            }
+            for (int offset : shadeOffsets) {
+                out.writeInt(offset);
+            }
+            for (int offset : nameOffsets) {
+                out.writeInt(offset);
+            }
+            strings.writeTo(out);
+            if (padding != 0) {
+                out.writeByte(0);
+            }
+            for (short cell : cells) {
+                out.writeShort(cell);
+            }
+        } finally {
+            out.close();
+        }
+
+        System.out.println("Compiled " + size + " colors in " + shadeOffsets.length + " shades, "
+                + stringOffsets.size() + " unique strings, " + lookupTable.getBoundaryCellCount()
+                + " of " + cells.length + " lookup cells on a boundary.");
+    }
+
+    private static int intern(String value, LinkedHashMap<String, Integer> offsets, DataOutputStream out)
+            throws IOException {
+        Integer offset = offsets.get(value);
+        if (offset == null) {
+            offset = out.size();
+            byte[] bytes = value.getBytes("UTF-8");
+            out.writeShort(bytes.length);
+            out.write(bytes);
+            offsets.put(value, offset);
+        }
+        return offset;
+    }
+
+}
@@ -0,0 +1,15 @@
+#!/bin/bash
+
+# Compiles colors.csv into the binary palette loaded by ColorNameCache
+cd "$(dirname "$0")"
+
+OUT=$(mktemp -d)
+
+# The source path lets javac find whatever the matchers depend on
+javac -d "$OUT" -sourcepath ../src/main/java PaletteCompiler.java \
+    && mkdir -p ../src/main/assets \
+    && java -cp "$OUT" PaletteCompiler colors.csv ../src/main/assets/colors.pal
+STATUS=$?
+
+rm -rf "$OUT"
+exit $STATUS
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2014 Martin Brabham
+ * Copyright 2014 Daniel Velazco
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+package com.holoyolostudios.colorvision.colorlib;
+
+import android.util.Log;
+
+import java.util.Locale;
+
+/**
+ * Benchmarks
+ * <p/>
+ * Minimal timing helper for the benchmark tests. A body is warmed up, then timed over several
+ * runs and the best run is reported in nanoseconds per operation, so the numbers are
+ * comparable between two implementations on the same device. Results only go to the log,
+ * benchmarks never fail a test on timing.
+ * <p/>
+ *
+ * @author Martin Brabham
+ * @author Daniel Velazco
+ */
+public final class Benchmarks {
+
+    // Constants
+    public static final String LOG_TAG = "ColorVisionBenchmark";
+    private static final int WARM_UP_RUNS = 3;
+    private static final long WARM_UP_NANOS = 200 * 1000 * 1000L;
+    private static final int TIMED_RUNS = 5;
+
+    // Keeps results alive so the timed work cannot be optimized away
+    private static volatile long sSink = 0;
+
+    /**
+     * Timed body, returns a value depending on the work it did
+     */
+    public interface Body {
+        long run();
+    }
+
+    private Benchmarks() {
+    }
+
+    /**
+     * Time a body and log the best run
+     *
+     * @param name       {@link String} label for the log
+     * @param operations {@link int} number of operations one run of the body performs
+     * @param body       {@link Body}
+     * @return {@link double} nanoseconds per operation of the best run
+     */
+    public static double measure(String name, int operations, Body body) {
+        // Short bodies need many runs before the compiler has seen enough of them
+        long warmUpEnd = System.nanoTime() + WARM_UP_NANOS;
+        for (int i = 0; i < WARM_UP_RUNS || System.nanoTime() < warmUpEnd; i++) {
+            sSink += body.run();
+        }
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < TIMED_RUNS; i++) {
+            long start = System.nanoTime();
+            sSink += body.run();
+            long elapsed = System.nanoTime() - start;
+            best = (elapsed < best) ? elapsed : best;
+        }
+        double perOperation = (double) best / operations;
+        Log.i(LOG_TAG, name + ": " + format(perOperation) + " ns/op");
+        return perOperation;
+    }
+
+    /**
+     * Log how much faster one measured implementation is than another
+     *
+     * @param name      {@link String} label for the log
+     * @param baseline  {@link double} ns/op of the reference implementation
+     * @param candidate {@link double} ns/op of the implementation under test
+     */
+    public static void logSpeedup(String name, double baseline, double candidate) {
+        Log.i(LOG_TAG, name + ": " + format(baseline / candidate) + "x");
+    }
+
+    /**
+     * Two decimals are plenty for timings
+     */
+    private static String format(double value) {
+        return String.format(Locale.US, "%.2f", value);
+    }
+
+}
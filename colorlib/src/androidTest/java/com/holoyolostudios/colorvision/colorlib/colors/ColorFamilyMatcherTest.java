@@ -0,0 +1,150 @@
+/*
+ * Copyright 2014 Martin Brabham
+ * Copyright 2014 Daniel Velazco
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+package com.holoyolostudios.colorvision.colorlib.colors;
+
+import android.test.AndroidTestCase;
+import android.util.Log;
+import com.holoyolostudios.colorvision.colorlib.Benchmarks;
+
+import java.util.Random;
+
+/**
+ * ColorFamilyMatcherTest
+ * <p/>
+ * Checks that {@link ColorFamilyMatcher} returns the same index and family as the brute-force
+ * scan of {@link ColorPalette}, and measures both lookups against it.
+ * <p/>
+ *
+ * @author Daniel Velazco
+ * @author Martin Brabham
+ */
+public class ColorFamilyMatcherTest extends AndroidTestCase {
+
+    // Constants
+    private static final int GRID_STEP = 3;
+    private static final int NEIGHBOURHOOD = 2;
+    private static final int QUERIES = 100000;
+
+    public void testFindNearestMatchesPalette() throws Exception {
+        ColorPalette palette = TestPalettes.load(getContext());
+        ColorFamilyMatcher matcher = new ColorFamilyMatcher(palette);
+        for (int r = 0; r < 256; r += GRID_STEP) {
+            for (int g = 0; g < 256; g += GRID_STEP) {
+                for (int b = 0; b < 256; b += GRID_STEP) {
+                    assertMatches(palette, matcher, r, g, b);
+                }
+            }
+        }
+    }
+
+    public void testFindNearestMatchesPaletteNearItsColors() throws Exception {
+        // Equally close colors and bucket edges are most common right around the palette colors
+        ColorPalette palette = TestPalettes.load(getContext());
+        ColorFamilyMatcher matcher = new ColorFamilyMatcher(palette);
+        for (int i = 0; i < palette.size(); i++) {
+            for (int dr = -NEIGHBOURHOOD; dr <= NEIGHBOURHOOD; dr++) {
+                for (int dg = -NEIGHBOURHOOD; dg <= NEIGHBOURHOOD; dg++) {
+                    for (int db = -NEIGHBOURHOOD; db <= NEIGHBOURHOOD; db++) {
+                        assertMatches(palette, matcher, clamp(palette.getRed(i) + dr),
+                                clamp(palette.getGreen(i) + dg), clamp(palette.getBlue(i) + db));
+                    }
+                }
+            }
+        }
+    }
+
+    public void testFindNearestMatchesRandomPalettes() {
+        int[] sizes = {1, 2, 50, 2000};
+        Random random = new Random(12);
+        for (int size : sizes) {
+            ColorPalette palette = TestPalettes.random(size, size);
+            ColorFamilyMatcher matcher = new ColorFamilyMatcher(palette);
+            for (int i = 0; i < QUERIES / 10; i++) {
+                assertMatches(palette, matcher, random.nextInt(256), random.nextInt(256), random.nextInt(256));
+            }
+        }
+    }
+
+    public void testFindNearestOnEmptyPalette() {
+        ColorFamilyMatcher matcher = new ColorFamilyMatcher(TestPalettes.random(0, 0));
+        assertEquals(-1, matcher.findNearest(10, 20, 30));
+        assertEquals(-1, matcher.findFamily(10, 20, 30));
+    }
+
+    public void testBenchmarkLookup() throws Exception {
+        final ColorPalette palette = TestPalettes.load(getContext());
+        final ColorFamilyMatcher matcher = new ColorFamilyMatcher(palette);
+        final int[] queries = ColorPaletteTest.randomQueries(QUERIES, 13);
+        double linear = Benchmarks.measure("linear scan, " + palette.size() + " colors", QUERIES,
+                new Benchmarks.Body() {
+                    @Override
+                    public long run() {
+                        long sum = 0;
+                        for (int pixel : queries) {
+                            sum += palette.findNearest((pixel >> 16) & 0xFF, (pixel >> 8) & 0xFF, pixel & 0xFF);
+                        }
+                        return sum;
+                    }
+                });
+        double nearest = Benchmarks.measure("family matcher nearest, " + palette.size() + " colors", QUERIES,
+                new Benchmarks.Body() {
+                    @Override
+                    public long run() {
+                        long sum = 0;
+                        for (int pixel : queries) {
+                            sum += matcher.findNearest((pixel >> 16) & 0xFF, (pixel >> 8) & 0xFF, pixel & 0xFF);
+                        }
+                        return sum;
+                    }
+                });
+        double family = Benchmarks.measure("family matcher family only, " + palette.size() + " colors", QUERIES,
+                new Benchmarks.Body() {
+                    @Override
+                    public long run() {
+                        long sum = 0;
+                        for (int pixel : queries) {
+                            sum += matcher.findFamily((pixel >> 16) & 0xFF, (pixel >> 8) & 0xFF, pixel & 0xFF);
+                        }
+                        return sum;
+                    }
+                });
+        Benchmarks.logSpeedup("family matcher nearest speedup", linear, nearest);
+        Benchmarks.logSpeedup("family matcher family only speedup", linear, family);
+
+        long candidates = 0;
+        for (int bucket = 0; bucket < ColorFamilyMatcher.BUCKETS; bucket++) {
+            candidates += matcher.getCandidateCount(bucket);
+        }
+        Log.i(Benchmarks.LOG_TAG, "family matcher candidates per bucket: "
+                + candidates / ColorFamilyMatcher.BUCKETS + " of " + palette.size());
+    }
+
+    /**
+     * Compare the index and the family with the palette scan
+     */
+    private static void assertMatches(ColorPalette palette, ColorFamilyMatcher matcher, int r, int g, int b) {
+        int expected = palette.findNearest(r, g, b);
+        String color = r + "," + g + "," + b;
+        assertEquals(color, expected, matcher.findNearest(r, g, b));
+        assertEquals(color, palette.getShadeId(expected), matcher.findFamily(r, g, b));
+    }
+
+    private static int clamp(int value) {
+        return (value < 0) ? 0 : (value > 255) ? 255 : value;
+    }
+
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2014 Martin Brabham
+ * Copyright 2014 Daniel Velazco
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+package com.holoyolostudios.colorvision.colorlib.colors;
+
+import android.test.AndroidTestCase;
+import com.holoyolostudios.colorvision.colorlib.Benchmarks;
+
+import java.util.Random;
+
+/**
+ * ColorKdTreeTest
+ * <p/>
+ * Checks that {@link ColorKdTree} returns the same colors, in the same order, as the
+ * brute-force scan of {@link ColorPalette} and measures both as the palette grows.
+ * <p/>
+ *
+ * @author Daniel Velazco
+ * @author Martin Brabham
+ */
+public class ColorKdTreeTest extends AndroidTestCase {
+
+    // Constants
+    private static final int GRID_STEP = 3;
+    private static final int QUERIES = 20000;
+    private static final int MAX_K = 8;
+
+    public void testFindNearestMatchesPalette() throws Exception {
+        ColorPalette palette = TestPalettes.load(getContext());
+        ColorKdTree tree = new ColorKdTree(palette);
+        for (int r = 0; r < 256; r += GRID_STEP) {
+            for (int g = 0; g < 256; g += GRID_STEP) {
+                for (int b = 0; b < 256; b += GRID_STEP) {
+                    assertEquals(r + "," + g + "," + b, palette.findNearest(r, g, b), tree.findNearest(r, g, b));
+                }
+            }
+        }
+    }
+
+    public void testFindNearestMatchesRandomPalettes() {
+        int[] sizes = {1, 2, 3, 7, 100, 5000};
+        Random random = new Random(4);
+        for (int size : sizes) {
+            ColorPalette palette = TestPalettes.random(size, size);
+            ColorKdTree tree = new ColorKdTree(palette);
+            for (int i = 0; i < QUERIES; i++) {
+                int r = random.nextInt(256);
+                int g = random.nextInt(256);
+                int b = random.nextInt(256);
+                assertEquals(palette.findNearest(r, g, b), tree.findNearest(r, g, b));
+            }
+        }
+    }
+
+    public void testFindNearestOnEmptyPalette() {
+        ColorKdTree tree = new ColorKdTree(TestPalettes.random(0, 0));
+        assertEquals(-1, tree.findNearest(10, 20, 30));
+        assertEquals(0, tree.findNearest(10, 20, 30, 3, new int[3], new int[3]));
+    }
+
+    public void testTopKMatchesPalette() throws Exception {
+        ColorPalette palette = TestPalettes.load(getContext());
+        assertTopKMatches(palette, new ColorKdTree(palette), 5);
+        ColorPalette small = TestPalettes.random(5, 6);
+        assertTopKMatches(small, new ColorKdTree(small), 7);
+    }
+
+    public void testBenchmarkScaling() throws Exception {
+        // Fewer queries for the larger palettes keep the linear scan affordable
+        benchmark(TestPalettes.load(getContext()), QUERIES);
+        benchmark(TestPalettes.random(10000, 8), QUERIES / 10);
+        benchmark(TestPalettes.random(100000, 9), QUERIES / 100);
+    }
+
+    /**
+     * Compare the k nearest colors, including k = 0 and k beyond the palette size
+     */
+    private static void assertTopKMatches(ColorPalette palette, ColorKdTree tree, long seed) {
+        int[] expectedIndices = new int[MAX_K];
+        int[] expectedDistances = new int[MAX_K];
+        int[] indices = new int[MAX_K];
+        int[] distances = new int[MAX_K];
+        Random random = new Random(seed);
+        for (int i = 0; i < QUERIES; i++) {
+            int r = random.nextInt(256);
+            int g = random.nextInt(256);
+            int b = random.nextInt(256);
+            int k = i % (MAX_K + 1);
+            int expected = palette.findNearest(r, g, b, k, expectedIndices, expectedDistances);
+            assertEquals(expected, tree.findNearest(r, g, b, k, indices, distances));
+            for (int j = 0; j < expected; j++) {
+                assertEquals(expectedIndices[j], indices[j]);
+                assertEquals(expectedDistances[j], distances[j]);
+            }
+        }
+    }
+
+    /**
+     * Time the brute-force scan and the tree on the same queries
+     */
+    private static void benchmark(final ColorPalette palette, int count) {
+        final ColorKdTree tree = new ColorKdTree(palette);
+        final int[] queries = ColorPaletteTest.randomQueries(count, palette.size());
+        double linear = Benchmarks.measure("linear scan, " + palette.size() + " colors", count,
+                new Benchmarks.Body() {
+                    @Override
+                    public long run() {
+                        long sum = 0;
+                        for (int pixel : queries) {
+                            sum += palette.findNearest((pixel >> 16) & 0xFF, (pixel >> 8) & 0xFF, pixel & 0xFF);
+                        }
+                        return sum;
+                    }
+                });
+        double kdTree = Benchmarks.measure("k-d tree, " + palette.size() + " colors", count,
+                new Benchmarks.Body() {
+                    @Override
+                    public long run() {
+                        long sum = 0;
+                        for (int pixel : queries) {
+                            sum += tree.findNearest((pixel >> 16) & 0xFF, (pixel >> 8) & 0xFF, pixel & 0xFF);
+                        }
+                        return sum;
+                    }
+                });
+        Benchmarks.logSpeedup("k-d tree speedup, " + palette.size() + " colors", linear, kdTree);
+    }
+
+}
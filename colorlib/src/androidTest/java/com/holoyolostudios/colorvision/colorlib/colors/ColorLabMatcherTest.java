@@ -0,0 +1,263 @@
+/*
+ * Copyright 2014 Martin Brabham
+ * Copyright 2014 Daniel Velazco
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+package com.holoyolostudios.colorvision.colorlib.colors;
+
+import android.test.AndroidTestCase;
+import com.holoyolostudios.colorvision.colorlib.Benchmarks;
+
+import java.util.Random;
+
+/**
+ * ColorLabMatcherTest
+ * <p/>
+ * Checks {@link ColorLabMatcher} against a full scan of the palette with the same metric and
+ * its CIEDE2000 implementation against Sharma, Wu and Dalal's test data, and measures the cost
+ * of a lookup with each metric.
+ * <p/>
+ *
+ * @author Daniel Velazco
+ * @author Martin Brabham
+ */
+public class ColorLabMatcherTest extends AndroidTestCase {
+
+    // Constants
+    private static final int GRID_STEP = 5;
+    private static final int QUERIES = 20000;
+
+    // A CIEDE2000 full scan costs about a hundred RGB scans
+    private static final int CIEDE2000_GRID_STEP = 15;
+    private static final int CIEDE2000_QUERIES = 2000;
+
+    // Equally close colors may come out of the pruned search and the scan in either order
+    private static final double TIE_TOLERANCE = 1e-9;
+
+    // The published differences have four decimals
+    private static final double SHARMA_TOLERANCE = 1e-4;
+
+    // Largest Lab difference the query tables may introduce
+    private static final double TABLE_TOLERANCE = 0.05;
+
+    // L1, a1, b1, L2, a2, b2 and the CIEDE2000 difference of the 34 pairs published by Sharma,
+    // Wu and Dalal, "The CIEDE2000 Color-Difference Formula", 2005
+    private static final double[][] SHARMA_PAIRS = {
+            {50.0000, 2.6772, -79.7751, 50.0000, 0.0000, -82.7485, 2.0425},
+            {50.0000, 3.1571, -77.2803, 50.0000, 0.0000, -82.7485, 2.8615},
+            {50.0000, 2.8361, -74.0200, 50.0000, 0.0000, -82.7485, 3.4412},
+            {50.0000, -1.3802, -84.2814, 50.0000, 0.0000, -82.7485, 1.0000},
+            {50.0000, -1.1848, -84.8006, 50.0000, 0.0000, -82.7485, 1.0000},
+            {50.0000, -0.9009, -85.5211, 50.0000, 0.0000, -82.7485, 1.0000},
+            {50.0000, 0.0000, 0.0000, 50.0000, -1.0000, 2.0000, 2.3669},
+            {50.0000, -1.0000, 2.0000, 50.0000, 0.0000, 0.0000, 2.3669},
+            {50.0000, 2.4900, -0.0010, 50.0000, -2.4900, 0.0009, 7.1792},
+            {50.0000, 2.4900, -0.0010, 50.0000, -2.4900, 0.0010, 7.1792},
+            {50.0000, 2.4900, -0.0010, 50.0000, -2.4900, 0.0011, 7.2195},
+            {50.0000, 2.4900, -0.0010, 50.0000, -2.4900, 0.0012, 7.2195},
+            {50.0000, -0.0010, 2.4900, 50.0000, 0.0009, -2.4900, 4.8045},
+            {50.0000, -0.0010, 2.4900, 50.0000, 0.0010, -2.4900, 4.8045},
+            {50.0000, -0.0010, 2.4900, 50.0000, 0.0011, -2.4900, 4.7461},
+            {50.0000, 2.5000, 0.0000, 50.0000, 0.0000, -2.5000, 4.3065},
+            {50.0000, 2.5000, 0.0000, 73.0000, 25.0000, -18.0000, 27.1492},
+            {50.0000, 2.5000, 0.0000, 61.0000, -5.0000, 29.0000, 22.8977},
+            {50.0000, 2.5000, 0.0000, 56.0000, -27.0000, -3.0000, 31.9030},
+            {50.0000, 2.5000, 0.0000, 58.0000, 24.0000, 15.0000, 19.4535},
+            {50.0000, 2.5000, 0.0000, 50.0000, 3.1736, 0.5854, 1.0000},
+            {50.0000, 2.5000, 0.0000, 50.0000, 3.2972, 0.0000, 1.0000},
+            {50.0000, 2.5000, 0.0000, 50.0000, 1.8634, 0.5757, 1.0000},
+            {50.0000, 2.5000, 0.0000, 50.0000, 3.2592, 0.3350, 1.0000},
+            {60.2574, -34.0099, 36.2677, 60.4626, -34.1751, 39.4387, 1.2644},
+            {63.0109, -31.0961, -5.8663, 62.8187, -29.7946, -4.0864, 1.2630},
+            {61.2901, 3.7196, -5.3901, 61.4292, 2.2480, -4.9620, 1.8731},
+            {35.0831, -44.1164, 3.7933, 35.0232, -40.0716, 1.5901, 1.8645},
+            {22.7233, 20.0904, -46.6940, 23.0331, 14.9730, -42.5619, 2.0373},
+            {36.4612, 47.8580, 18.3852, 36.2715, 50.5065, 21.2231, 1.4146},
+            {90.8027, -2.0831, 1.4410, 91.1528, -1.6435, 0.0447, 1.4441},
+            {90.9257, -0.5406, -0.9208, 88.6381, -0.8985, -0.7239, 1.5381},
+            {6.7747, -0.2908, -2.4247, 5.8714, -0.0985, -2.2286, 0.6377},
+            {2.0776, 0.0795, -1.1350, 0.9033, -0.0636, -0.5514, 0.9082}
+    };
+
+    public void testDeltaE2000MatchesSharmaData() {
+        for (double[] pair : SHARMA_PAIRS) {
+            assertEquals(pair[6], ColorLabMatcher.deltaE2000(pair[0], pair[1], pair[2], pair[3], pair[4], pair[5]),
+                    SHARMA_TOLERANCE);
+            assertEquals(pair[6], ColorLabMatcher.deltaE2000(pair[3], pair[4], pair[5], pair[0], pair[1], pair[2]),
+                    SHARMA_TOLERANCE);
+        }
+    }
+
+    public void testTablesMatchExactConversion() {
+        double[] table = new double[3];
+        double[] exact = new double[3];
+        for (int r = 0; r < 256; r += GRID_STEP) {
+            for (int g = 0; g < 256; g += GRID_STEP) {
+                for (int b = 0; b < 256; b += GRID_STEP) {
+                    ColorLabMatcher.toLab(r, g, b, table);
+                    ColorLabMatcher.toLabExact(r, g, b, exact);
+                    for (int i = 0; i < 3; i++) {
+                        assertEquals(exact[i], table[i], TABLE_TOLERANCE);
+                    }
+                }
+            }
+        }
+    }
+
+    public void testCie76MatchesFullScan() throws Exception {
+        assertMatchesFullScan(TestPalettes.load(getContext()), ColorLabMatcher.METRIC_CIE76, GRID_STEP, QUERIES);
+        assertMatchesFullScan(TestPalettes.random(500, 14), ColorLabMatcher.METRIC_CIE76, GRID_STEP, QUERIES);
+    }
+
+    public void testCiede2000MatchesFullScan() throws Exception {
+        assertMatchesFullScan(TestPalettes.load(getContext()), ColorLabMatcher.METRIC_CIEDE2000,
+                CIEDE2000_GRID_STEP, CIEDE2000_QUERIES);
+        assertMatchesFullScan(TestPalettes.random(500, 15), ColorLabMatcher.METRIC_CIEDE2000,
+                CIEDE2000_GRID_STEP, CIEDE2000_QUERIES);
+    }
+
+    public void testEmptyPalette() {
+        assertEquals(-1, new ColorLabMatcher(TestPalettes.random(0, 0), ColorLabMatcher.METRIC_CIEDE2000)
+                .findNearest(10, 20, 30));
+    }
+
+    public void testBenchmarkLookup() throws Exception {
+        final ColorPalette palette = TestPalettes.load(getContext());
+        final ColorLabMatcher cie76 = new ColorLabMatcher(palette, ColorLabMatcher.METRIC_CIE76);
+        final ColorLabMatcher ciede2000 = new ColorLabMatcher(palette, ColorLabMatcher.METRIC_CIEDE2000);
+        final double[][] labs = getPaletteLabs(palette);
+        final int[] queries = ColorPaletteTest.randomQueries(QUERIES, 16);
+        double rgb = Benchmarks.measure("RGB linear scan, " + palette.size() + " colors", QUERIES, new Benchmarks.Body() {
+            @Override
+            public long run() {
+                long sum = 0;
+                for (int pixel : queries) {
+                    sum += palette.findNearest((pixel >> 16) & 0xFF, (pixel >> 8) & 0xFF, pixel & 0xFF);
+                }
+                return sum;
+            }
+        });
+        double fullScan = Benchmarks.measure("CIEDE2000 full scan, " + palette.size() + " colors", CIEDE2000_QUERIES,
+                new Benchmarks.Body() {
+                    @Override
+                    public long run() {
+                        long sum = 0;
+                        for (int i = 0; i < CIEDE2000_QUERIES; i++) {
+                            int pixel = queries[i];
+                            sum += findNearest(labs, ColorLabMatcher.METRIC_CIEDE2000,
+                                    (pixel >> 16) & 0xFF, (pixel >> 8) & 0xFF, pixel & 0xFF);
+                        }
+                        return sum;
+                    }
+                });
+        double pruned76 = Benchmarks.measure("CIE76 matcher, " + palette.size() + " colors", QUERIES, new Benchmarks.Body() {
+            @Override
+            public long run() {
+                long sum = 0;
+                for (int pixel : queries) {
+                    sum += cie76.findNearest((pixel >> 16) & 0xFF, (pixel >> 8) & 0xFF, pixel & 0xFF);
+                }
+                return sum;
+            }
+        });
+        double pruned2000 = Benchmarks.measure("CIEDE2000 matcher, " + palette.size() + " colors", QUERIES,
+                new Benchmarks.Body() {
+                    @Override
+                    public long run() {
+                        long sum = 0;
+                        for (int pixel : queries) {
+                            sum += ciede2000.findNearest((pixel >> 16) & 0xFF, (pixel >> 8) & 0xFF, pixel & 0xFF);
+                        }
+                        return sum;
+                    }
+                });
+        Benchmarks.logSpeedup("CIEDE2000 matcher speedup over full scan", fullScan, pruned2000);
+        Benchmarks.logSpeedup("CIE76 matcher speed relative to RGB scan", rgb, pruned76);
+        Benchmarks.logSpeedup("CIEDE2000 matcher speed relative to RGB scan", rgb, pruned2000);
+    }
+
+    /**
+     * Compare the matcher with a full scan on a grid and on random colors
+     */
+    private static void assertMatchesFullScan(ColorPalette palette, int metric, int step, int queries) {
+        ColorLabMatcher matcher = new ColorLabMatcher(palette, metric);
+        assertEquals(metric, matcher.getMetric());
+        double[][] labs = getPaletteLabs(palette);
+        for (int r = 0; r < 256; r += step) {
+            for (int g = 0; g < 256; g += step) {
+                for (int b = 0; b < 256; b += step) {
+                    assertMatches(labs, matcher, metric, r, g, b);
+                }
+            }
+        }
+        Random random = new Random(palette.size());
+        for (int i = 0; i < queries; i++) {
+            assertMatches(labs, matcher, metric, random.nextInt(256), random.nextInt(256), random.nextInt(256));
+        }
+    }
+
+    /**
+     * The matcher has to find the scan's color or one exactly as close
+     */
+    private static void assertMatches(double[][] labs, ColorLabMatcher matcher, int metric, int r, int g, int b) {
+        int expected = findNearest(labs, metric, r, g, b);
+        int actual = matcher.findNearest(r, g, b);
+        if (expected != actual) {
+            double[] query = new double[3];
+            ColorLabMatcher.toLab(r, g, b, query);
+            assertEquals(r + "," + g + "," + b, distance(labs[expected], query, metric),
+                    distance(labs[actual], query, metric), TIE_TOLERANCE);
+        }
+    }
+
+    /**
+     * Full scan in palette order, the query converted through the same tables as the matcher
+     */
+    private static int findNearest(double[][] labs, int metric, int r, int g, int b) {
+        double[] query = new double[3];
+        ColorLabMatcher.toLab(r, g, b, query);
+        int closest = -1;
+        double minDistance = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < labs.length; i++) {
+            double distance = distance(labs[i], query, metric);
+            if (distance < minDistance) {
+                minDistance = distance;
+                closest = i;
+            }
+        }
+        return closest;
+    }
+
+    private static double distance(double[] color, double[] query, int metric) {
+        if (metric == ColorLabMatcher.METRIC_CIEDE2000) {
+            return ColorLabMatcher.deltaE2000(query[0], query[1], query[2], color[0], color[1], color[2]);
+        }
+        double dl = color[0] - query[0];
+        double da = color[1] - query[1];
+        double db = color[2] - query[2];
+        return Math.sqrt(dl * dl + da * da + db * db);
+    }
+
+    /**
+     * Exact Lab value of every palette color
+     */
+    private static double[][] getPaletteLabs(ColorPalette palette) {
+        double[][] labs = new double[palette.size()][3];
+        for (int i = 0; i < palette.size(); i++) {
+            ColorLabMatcher.toLabExact(palette.getRed(i), palette.getGreen(i), palette.getBlue(i), labs[i]);
+        }
+        return labs;
+    }
+
+}
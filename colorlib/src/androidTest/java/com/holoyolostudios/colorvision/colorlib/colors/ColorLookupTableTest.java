@@ -0,0 +1,158 @@
+/*
+ * Copyright 2014 Martin Brabham
+ * Copyright 2014 Daniel Velazco
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+package com.holoyolostudios.colorvision.colorlib.colors;
+
+import android.test.AndroidTestCase;
+import com.holoyolostudios.colorvision.colorlib.Benchmarks;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * ColorLookupTableTest
+ * <p/>
+ * Checks that {@link ColorLookupTable} returns the same index as
+ * {@link ColorPalette#findNearest(int, int, int)}, both with the table compiled into the palette
+ * and with cells resolved on first use, and measures the lookup against the exact matchers.
+ * <p/>
+ *
+ * @author Daniel Velazco
+ * @author Martin Brabham
+ */
+public class ColorLookupTableTest extends AndroidTestCase {
+
+    // Constants
+    private static final int GRID_STEP = 3;
+    private static final int QUERIES = 100000;
+
+    public void testCompiledTableMatchesPalette() throws Exception {
+        ColorPalette palette = TestPalettes.load(getContext());
+        assertTrue(palette.hasLookupTable(ColorLookupTable.DEFAULT_RED_BITS,
+                ColorLookupTable.DEFAULT_GREEN_BITS, ColorLookupTable.DEFAULT_BLUE_BITS));
+        assertMatchesPalette(palette, new ColorLookupTable(palette, new ColorKdTree(palette)));
+    }
+
+    public void testCompiledTableMatchesPrecomputed() throws Exception {
+        ColorPalette palette = TestPalettes.load(getContext());
+        ColorLookupTable table = new ColorLookupTable(palette, palette);
+        short[] compiled = new short[table.getCellCount()];
+        palette.readLookupTable(compiled);
+        short[] precomputed = new short[table.getCellCount()];
+        new ColorLookupTable(copy(palette), palette).exportCells(precomputed);
+        assertTrue(Arrays.equals(compiled, precomputed));
+    }
+
+    public void testLazyTableMatchesPalette() throws Exception {
+        ColorPalette palette = copy(TestPalettes.load(getContext()));
+        ColorLookupTable table = new ColorLookupTable(palette, palette);
+        assertEquals(0, table.getResolvedCellCount());
+        assertMatchesPalette(palette, table);
+        assertTrue(table.getResolvedCellCount() + table.getBoundaryCellCount() > 0);
+    }
+
+    public void testOtherGridSizesMatchPalette() {
+        ColorPalette palette = TestPalettes.random(300, 10);
+        assertMatchesPalette(palette, new ColorLookupTable(palette, palette, 1, 1, 1));
+        assertMatchesPalette(palette, new ColorLookupTable(palette, palette, 4, 4, 4));
+        assertMatchesPalette(palette, new ColorLookupTable(palette, palette, 6, 6, 6));
+    }
+
+    public void testBenchmarkLookup() throws Exception {
+        final ColorPalette palette = TestPalettes.load(getContext());
+        final ColorKdTree tree = new ColorKdTree(palette);
+        final ColorLookupTable table = new ColorLookupTable(palette, tree);
+        final int[] queries = ColorPaletteTest.randomQueries(QUERIES, 11);
+        double linear = Benchmarks.measure("linear scan, " + palette.size() + " colors", QUERIES, lookups(palette, queries));
+        double kdTree = Benchmarks.measure("k-d tree, " + palette.size() + " colors", QUERIES, lookups(tree, queries));
+        double lookup = Benchmarks.measure("lookup table, " + palette.size() + " colors", QUERIES, lookups(table, queries));
+        Benchmarks.logSpeedup("lookup table speedup over linear scan", linear, lookup);
+        Benchmarks.logSpeedup("lookup table speedup over k-d tree", kdTree, lookup);
+        Benchmarks.measure("lookup table precompute, " + table.getCellCount() + " cells", 1, new Benchmarks.Body() {
+            @Override
+            public long run() {
+                ColorLookupTable fresh = new ColorLookupTable(copy(palette), tree);
+                fresh.precompute();
+                return fresh.getBoundaryCellCount();
+            }
+        });
+    }
+
+    /**
+     * Compare on a grid and on both extreme corners of every 5-6-5 cell
+     */
+    private static void assertMatchesPalette(ColorPalette palette, ColorLookupTable table) {
+        for (int r = 0; r < 256; r += GRID_STEP) {
+            for (int g = 0; g < 256; g += GRID_STEP) {
+                for (int b = 0; b < 256; b += GRID_STEP) {
+                    assertEquals(r + "," + g + "," + b, palette.findNearest(r, g, b), table.findNearest(r, g, b));
+                }
+            }
+        }
+        for (int r = 0; r < 256; r += 8) {
+            for (int g = 0; g < 256; g += 4) {
+                for (int b = 0; b < 256; b += 8) {
+                    assertEquals(palette.findNearest(r, g, b), table.findNearest(r, g, b));
+                    assertEquals(palette.findNearest(r + 7, g + 3, b + 7), table.findNearest(r + 7, g + 3, b + 7));
+                }
+            }
+        }
+        Random random = new Random(palette.size());
+        for (int i = 0; i < QUERIES; i++) {
+            int r = random.nextInt(256);
+            int g = random.nextInt(256);
+            int b = random.nextInt(256);
+            assertEquals(palette.findNearest(r, g, b), table.findNearest(r, g, b));
+        }
+    }
+
+    /**
+     * Same colors without the compiled lookup table
+     */
+    private static ColorPalette copy(ColorPalette palette) {
+        int size = palette.size();
+        String[] shades = new String[size];
+        String[] names = new String[size];
+        int[] reds = new int[size];
+        int[] greens = new int[size];
+        int[] blues = new int[size];
+        for (int i = 0; i < size; i++) {
+            shades[i] = palette.getShade(i);
+            names[i] = palette.getName(i);
+            reds[i] = palette.getRed(i);
+            greens[i] = palette.getGreen(i);
+            blues[i] = palette.getBlue(i);
+        }
+        return new ColorPalette(shades, names, reds, greens, blues);
+    }
+
+    /**
+     * Look up every query with the given matcher
+     */
+    private static Benchmarks.Body lookups(final ColorMatcher matcher, final int[] queries) {
+        return new Benchmarks.Body() {
+            @Override
+            public long run() {
+                long sum = 0;
+                for (int pixel : queries) {
+                    sum += matcher.findNearest((pixel >> 16) & 0xFF, (pixel >> 8) & 0xFF, pixel & 0xFF);
+                }
+                return sum;
+            }
+        };
+    }
+
+}
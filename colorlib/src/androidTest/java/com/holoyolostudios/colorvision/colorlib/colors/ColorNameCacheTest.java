@@ -0,0 +1,152 @@
+/*
+ * Copyright 2014 Martin Brabham
+ * Copyright 2014 Daniel Velazco
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+package com.holoyolostudios.colorvision.colorlib.colors;
+
+import android.test.AndroidTestCase;
+import com.holoyolostudios.colorvision.colorlib.Benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * ColorNameCacheTest
+ * <p/>
+ * Checks that lookups through {@link ColorNameCache} always see a consistent snapshot while
+ * the palette and match mode are swapped underneath them, and measures lookup throughput as
+ * threads are added.
+ * <p/>
+ *
+ * @author Daniel Velazco
+ * @author Martin Brabham
+ */
+public class ColorNameCacheTest extends AndroidTestCase {
+
+    // Constants
+    private static final int READERS = 3;
+    private static final int SWAPS = 60;
+    private static final int LOOKUPS_PER_THREAD = 50000;
+    private static final int[] THREAD_COUNTS = {1, 2, 4};
+
+    // Members
+    private ColorNameCache mCache = null;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mCache = ColorNameCache.createInstance(getContext());
+        assertTrue(mCache.isInitialized());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mCache.destroy();
+        super.tearDown();
+    }
+
+    public void testSnapshotsStayConsistentDuringSwaps() throws Exception {
+        final ColorPalette shipped = mCache.getPalette();
+        final ColorPalette small = TestPalettes.random(17, 1);
+        final AtomicBoolean done = new AtomicBoolean(false);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+        Thread[] readers = new Thread[READERS];
+        for (int i = 0; i < READERS; i++) {
+            final long seed = i;
+            readers[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Random random = new Random(seed);
+                    try {
+                        while (!done.get()) {
+                            int r = random.nextInt(256);
+                            int g = random.nextInt(256);
+                            int b = random.nextInt(256);
+
+                            // Index and name from one snapshot always belong together, and the
+                            // RGB match modes agree with the palette scan
+                            ColorNameCache.Snapshot snapshot = mCache.getSnapshot();
+                            int index = snapshot.findNearest(r, g, b);
+                            ColorPalette palette = snapshot.getPalette();
+                            assertEquals(palette.findNearest(r, g, b), index);
+                            assertEquals(palette.getLabel(index), snapshot.getColorName(index));
+                            assertNotNull(mCache.getColorName(r, g, b));
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            });
+            readers[i].start();
+        }
+
+        try {
+            for (int i = 0; i < SWAPS && failure.get() == null; i++) {
+                mCache.setPalette((i % 2 == 0) ? small : shipped);
+                mCache.setMatchMode(i % (ColorNameCache.MATCH_MODE_FAMILY + 1));
+            }
+        } finally {
+            done.set(true);
+            for (Thread reader : readers) {
+                reader.join();
+            }
+        }
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+    }
+
+    public void testBenchmarkConcurrentLookups() {
+        final int[] queries = ColorPaletteTest.randomQueries(LOOKUPS_PER_THREAD, 2);
+        double single = 0;
+        for (final int threads : THREAD_COUNTS) {
+            double time = Benchmarks.measure("ColorNameCache lookups, " + threads + " threads",
+                    threads * LOOKUPS_PER_THREAD, new Benchmarks.Body() {
+                        @Override
+                        public long run() {
+                            Thread[] workers = new Thread[threads];
+                            for (int i = 0; i < threads; i++) {
+                                workers[i] = new Thread(new Runnable() {
+                                    @Override
+                                    public void run() {
+                                        for (int pixel : queries) {
+                                            mCache.findNearest((pixel >> 16) & 0xFF, (pixel >> 8) & 0xFF, pixel & 0xFF);
+                                        }
+                                    }
+                                });
+                                workers[i].start();
+                            }
+                            for (Thread worker : workers) {
+                                try {
+                                    worker.join();
+                                } catch (InterruptedException e) {
+                                    Thread.currentThread().interrupt();
+                                }
+                            }
+                            return threads;
+                        }
+                    });
+            if (threads == 1) {
+                single = time;
+            } else {
+                Benchmarks.logSpeedup("ColorNameCache throughput, " + threads + " threads on "
+                        + Runtime.getRuntime().availableProcessors() + " processors", single, time);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2014 Martin Brabham
+ * Copyright 2014 Daniel Velazco
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+package com.holoyolostudios.colorvision.colorlib.colors;
+
+import android.test.AndroidTestCase;
+import com.holoyolostudios.colorvision.colorlib.Benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * ColorPaletteTest
+ * <p/>
+ * Checks the flat-array scan of {@link ColorPalette} against a brute-force reference and
+ * compares its speed with the object-per-color scan it replaced.
+ * <p/>
+ *
+ * @author Daniel Velazco
+ * @author Martin Brabham
+ */
+public class ColorPaletteTest extends AndroidTestCase {
+
+    // Constants
+    private static final int GRID_STEP = 3;
+    private static final int QUERIES = 100000;
+    private static final int MAX_K = 8;
+
+    public void testFindNearestMatchesReference() throws Exception {
+        ColorPalette palette = TestPalettes.load(getContext());
+        assertTrue(palette.size() > 0);
+        for (int r = 0; r < 256; r += GRID_STEP) {
+            for (int g = 0; g < 256; g += GRID_STEP) {
+                for (int b = 0; b < 256; b += GRID_STEP) {
+                    assertEquals(r + "," + g + "," + b,
+                            TestPalettes.findNearest(palette, r, g, b), palette.findNearest(r, g, b));
+                }
+            }
+        }
+    }
+
+    public void testFindNearestBreaksTiesByIndex() {
+        ColorPalette palette = TestPalettes.random(20000, 1);
+        Random random = new Random(2);
+        for (int i = 0; i < QUERIES / 10; i++) {
+            int r = random.nextInt(256);
+            int g = random.nextInt(256);
+            int b = random.nextInt(256);
+            assertEquals(TestPalettes.findNearest(palette, r, g, b), palette.findNearest(r, g, b));
+        }
+    }
+
+    public void testTopKMatchesReference() throws Exception {
+        ColorPalette palette = TestPalettes.load(getContext());
+        int[] expected = new int[MAX_K];
+        int[] indices = new int[MAX_K];
+        int[] distances = new int[MAX_K];
+        Random random = new Random(5);
+        for (int i = 0; i < QUERIES / 10; i++) {
+            int r = random.nextInt(256);
+            int g = random.nextInt(256);
+            int b = random.nextInt(256);
+            int k = i % (MAX_K + 1);
+            assertEquals(TestPalettes.findNearest(palette, r, g, b, k, expected),
+                    palette.findNearest(r, g, b, k, indices, distances));
+            for (int j = 0; j < k; j++) {
+                assertEquals(expected[j], indices[j]);
+                assertEquals(palette.distance(indices[j], r, g, b), distances[j]);
+            }
+            if (k > 0) {
+                assertEquals(palette.findNearest(r, g, b), indices[0]);
+            }
+        }
+    }
+
+    public void testTopKOnSmallPalette() {
+        ColorPalette palette = TestPalettes.random(3, 6);
+        int[] expected = new int[MAX_K];
+        int[] indices = new int[MAX_K];
+        int[] distances = new int[MAX_K];
+        assertEquals(3, palette.findNearest(1, 2, 3, MAX_K, indices, distances));
+        assertEquals(3, TestPalettes.findNearest(palette, 1, 2, 3, MAX_K, expected));
+        for (int j = 0; j < 3; j++) {
+            assertEquals(expected[j], indices[j]);
+        }
+        assertEquals(0, palette.findNearest(1, 2, 3, 0, new int[0], new int[0]));
+    }
+
+    public void testFindNearestOnEmptyPalette() {
+        ColorPalette palette = TestPalettes.random(0, 0);
+        assertEquals(-1, palette.findNearest(10, 20, 30));
+        assertEquals(0, palette.findNearest(10, 20, 30, 3, new int[3], new int[3]));
+    }
+
+    public void testBenchmarkFindNearest() throws Exception {
+        final ColorPalette palette = TestPalettes.load(getContext());
+        final List<LegacyColor> legacy = new ArrayList<LegacyColor>(palette.size());
+        for (int i = 0; i < palette.size(); i++) {
+            legacy.add(new LegacyColor(palette.getRed(i), palette.getGreen(i), palette.getBlue(i)));
+        }
+        final int[] queries = randomQueries(QUERIES, 3);
+
+        double before = Benchmarks.measure("legacy ColorName scan, " + palette.size() + " colors",
+                QUERIES, new Benchmarks.Body() {
+                    @Override
+                    public long run() {
+                        long sum = 0;
+                        for (int pixel : queries) {
+                            LegacyColor closest = null;
+                            double minMSE = Double.MAX_VALUE;
+                            for (LegacyColor c : legacy) {
+                                double mse = c.computeMSE((pixel >> 16) & 0xFF, (pixel >> 8) & 0xFF, pixel & 0xFF);
+                                if (mse < minMSE) {
+                                    minMSE = mse;
+                                    closest = c;
+                                }
+                            }
+                            sum += (closest != null) ? closest.mR : 0;
+                        }
+                        return sum;
+                    }
+                });
+        double after = Benchmarks.measure("ColorPalette.findNearest, " + palette.size() + " colors",
+                QUERIES, new Benchmarks.Body() {
+                    @Override
+                    public long run() {
+                        long sum = 0;
+                        for (int pixel : queries) {
+                            sum += palette.findNearest((pixel >> 16) & 0xFF, (pixel >> 8) & 0xFF, pixel & 0xFF);
+                        }
+                        return sum;
+                    }
+                });
+        Benchmarks.logSpeedup("ColorPalette.findNearest speedup", before, after);
+    }
+
+    /**
+     * Random packed RGB query colors
+     */
+    static int[] randomQueries(int count, long seed) {
+        Random random = new Random(seed);
+        int[] queries = new int[count];
+        for (int i = 0; i < count; i++) {
+            queries[i] = random.nextInt(0x1000000);
+        }
+        return queries;
+    }
+
+    /**
+     * The color object the palette scan used to walk, minus its logging
+     */
+    private static class LegacyColor {
+
+        private final int mR;
+        private final int mG;
+        private final int mB;
+
+        LegacyColor(int r, int g, int b) {
+            mR = r;
+            mG = g;
+            mB = b;
+        }
+
+        double computeMSE(int pixR, int pixG, int pixB) {
+            int rdiff = pixR - mR;
+            int gdiff = pixG - mG;
+            int bdiff = pixB - mB;
+            return (double) (rdiff * rdiff + gdiff * gdiff + bdiff * bdiff) / 3;
+        }
+
+    }
+
+}
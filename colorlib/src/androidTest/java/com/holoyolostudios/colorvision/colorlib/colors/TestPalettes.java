@@ -0,0 +1,143 @@
+/*
+ * Copyright 2014 Martin Brabham
+ * Copyright 2014 Daniel Velazco
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+package com.holoyolostudios.colorvision.colorlib.colors;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * TestPalettes
+ * <p/>
+ * Palettes for the matcher tests: the one shipped in the assets and random ones of any size,
+ * plus a brute-force reference search that does not share code with {@link ColorPalette}.
+ * <p/>
+ *
+ * @author Daniel Velazco
+ * @author Martin Brabham
+ */
+public final class TestPalettes {
+
+    // Constants
+    private static final String PALETTE_ASSET = "colors.pal";
+    private static final String[] SHADES = {"red", "green", "blue", "gray"};
+
+    private TestPalettes() {
+    }
+
+    /**
+     * Map the palette shipped in the assets, like {@link ColorNameCache#init()}
+     *
+     * @param context {@link Context}
+     * @return {@link ColorPalette}
+     * @throws IOException
+     */
+    public static ColorPalette load(Context context) throws IOException {
+        AssetFileDescriptor afd = context.getAssets().openFd(PALETTE_ASSET);
+        FileInputStream in = afd.createInputStream();
+        try {
+            return ColorPalette.map(in.getChannel(), afd.getStartOffset(), afd.getLength());
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Build a palette of random colors. Large palettes hold duplicates and equally close colors,
+     * which keeps the tie breaking under test.
+     *
+     * @param size {@link int}
+     * @param seed {@link long}
+     * @return {@link ColorPalette}
+     */
+    public static ColorPalette random(int size, long seed) {
+        Random random = new Random(seed);
+        String[] shades = new String[size];
+        String[] names = new String[size];
+        int[] reds = new int[size];
+        int[] greens = new int[size];
+        int[] blues = new int[size];
+        for (int i = 0; i < size; i++) {
+            shades[i] = SHADES[random.nextInt(SHADES.length)];
+            names[i] = "color" + i;
+            reds[i] = random.nextInt(256);
+            greens[i] = random.nextInt(256);
+            blues[i] = random.nextInt(256);
+        }
+        return new ColorPalette(shades, names, reds, greens, blues);
+    }
+
+    /**
+     * Brute-force nearest color by squared RGB distance, lowest index on ties
+     *
+     * @param palette {@link ColorPalette}
+     * @param r       {@link int}
+     * @param g       {@link int}
+     * @param b       {@link int}
+     * @return {@link int}
+     */
+    public static int findNearest(ColorPalette palette, int r, int g, int b) {
+        int closest = -1;
+        long minDistance = Long.MAX_VALUE;
+        for (int i = 0; i < palette.size(); i++) {
+            long rdiff = r - palette.getRed(i);
+            long gdiff = g - palette.getGreen(i);
+            long bdiff = b - palette.getBlue(i);
+            long distance = rdiff * rdiff + gdiff * gdiff + bdiff * bdiff;
+            if (distance < minDistance) {
+                minDistance = distance;
+                closest = i;
+            }
+        }
+        return closest;
+    }
+
+    /**
+     * Brute-force k nearest colors, nearest first and equally close colors by index
+     *
+     * @param palette {@link ColorPalette}
+     * @param r       {@link int}
+     * @param g       {@link int}
+     * @param b       {@link int}
+     * @param k       {@link int}
+     * @param indices {@link int} array of at least k entries receiving the palette indices
+     * @return {@link int} number of colors found
+     */
+    public static int findNearest(ColorPalette palette, int r, int g, int b, int k, int[] indices) {
+        int size = palette.size();
+        boolean[] taken = new boolean[size];
+        int found = 0;
+        while (found < k && found < size) {
+            int closest = -1;
+            int minDistance = Integer.MAX_VALUE;
+            for (int i = 0; i < size; i++) {
+                int distance = palette.distance(i, r, g, b);
+                if (!taken[i] && distance < minDistance) {
+                    minDistance = distance;
+                    closest = i;
+                }
+            }
+            taken[closest] = true;
+            indices[found++] = closest;
+        }
+        return found;
+    }
+
+}
@@ -0,0 +1,295 @@
+/*
+ * Copyright 2014 Martin Brabham
+ * Copyright 2014 Daniel Velazco
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+package com.holoyolostudios.colorvision.colorlib.util;
+
+import android.graphics.Color;
+import android.os.Debug;
+import android.test.AndroidTestCase;
+import android.util.Log;
+import com.holoyolostudios.colorvision.colorlib.Benchmarks;
+
+/**
+ * ColorAnalyzerUtilTest
+ * <p/>
+ * Checks the integer YUV to RGB conversion and the averaging loops of {@link ColorAnalyzerUtil}
+ * against the straightforward code they replaced and measures both. Also checks that the
+ * standard error of a sampled area describes how far the sample is from the whole area.
+ * <p/>
+ *
+ * @author Martin Brabham
+ * @author Daniel Velazco
+ */
+public class ColorAnalyzerUtilTest extends AndroidTestCase {
+
+    // Viewport sizes to time, in pixels per side
+    private static final int[] VIEWPORT_SIZES = {16, 64, 128, 256};
+    private static final int MIN_PIXELS_PER_RUN = 256 * 1024;
+
+    // Sampling
+    private static final int[] SAMPLE_BUDGETS = {64, 256, 1024, 4096, 16384};
+    private static final int SAMPLE_SEEDS = 400;
+    private static final double MIN_COVERAGE = 0.8;
+
+    public void testFixedPointWithinOneOfFloat() {
+        // Every Y, U and V combination, one 2x2 block at a time
+        FrameDescriptor frame = new FrameDescriptor(2, 2);
+        byte[] yuv = new byte[frame.getBufferSize()];
+        int vu = frame.getVuIndex(0, 0);
+        for (int v = 0; v < 256; v++) {
+            yuv[vu] = (byte) v;
+            for (int u = 0; u < 256; u++) {
+                yuv[vu + 1] = (byte) u;
+                for (int y = 0; y < 256; y++) {
+                    yuv[frame.getYIndex(0, 0)] = (byte) y;
+                    int exact = ColorAnalyzerUtil.getColorAtPoint(frame, yuv, 0, 0);
+                    int fixed = ColorAnalyzerUtil.getColorAtPointFixed(frame, yuv, 0, 0);
+                    String color = y + "," + u + "," + v;
+                    assertEquals(color, Color.red(exact), Color.red(fixed), 1);
+                    assertEquals(color, Color.green(exact), Color.green(fixed), 1);
+                    assertEquals(color, Color.blue(exact), Color.blue(fixed), 1);
+                    assertEquals(0xFF, Color.alpha(fixed));
+                }
+            }
+        }
+    }
+
+    public void testBenchmarkConversion() {
+        final FrameDescriptor frame = new FrameDescriptor(640, 360);
+        final byte[] yuv = TestFrames.scene(frame, 1);
+        int pixels = frame.getWidth() * frame.getHeight();
+        String size = frame.getWidth() + "x" + frame.getHeight();
+        double floats = Benchmarks.measure("float conversion, " + size, pixels, new Benchmarks.Body() {
+            @Override
+            public long run() {
+                long sum = 0;
+                for (int y = 0; y < frame.getHeight(); y++) {
+                    for (int x = 0; x < frame.getWidth(); x++) {
+                        sum += ColorAnalyzerUtil.getColorAtPoint(frame, yuv, x, y);
+                    }
+                }
+                return sum;
+            }
+        });
+        double fixed = Benchmarks.measure("fixed-point conversion, " + size, pixels, new Benchmarks.Body() {
+            @Override
+            public long run() {
+                long sum = 0;
+                for (int y = 0; y < frame.getHeight(); y++) {
+                    for (int x = 0; x < frame.getWidth(); x++) {
+                        sum += ColorAnalyzerUtil.getColorAtPointFixed(frame, yuv, x, y);
+                    }
+                }
+                return sum;
+            }
+        });
+        Benchmarks.logSpeedup("fixed-point conversion speedup", floats, fixed);
+    }
+
+    public void testExactAverageMatchesPerPixelReference() {
+        FrameDescriptor frame = new FrameDescriptor(64, 48);
+        byte[][] frames = {TestFrames.noise(frame, 2), TestFrames.scene(frame, 3)};
+        for (byte[] yuv : frames) {
+            // Odd and even left and right edges, and areas of a single row or column
+            for (int x1 = 0; x1 < 4; x1++) {
+                for (int x2 = x1; x2 < x1 + 5; x2++) {
+                    for (int y1 = 0; y1 < 3; y1++) {
+                        for (int y2 = y1 + 1; y2 < y1 + 4; y2++) {
+                            assertExactAverage(frame, yuv, x1 + 10, y1 + 10, x2 + 10, y2 + 10);
+                        }
+                    }
+                }
+            }
+            assertExactAverage(frame, yuv, 0, 0, frame.getWidth() - 1, frame.getHeight());
+            assertExactAverage(frame, yuv, 1, 1, frame.getWidth() - 2, frame.getHeight() - 1);
+        }
+    }
+
+    public void testBenchmarkExactAverage() {
+        final FrameDescriptor frame = new FrameDescriptor(1280, 720);
+        final byte[] yuv = TestFrames.scene(frame, 4);
+        for (int size : VIEWPORT_SIZES) {
+            final int x1 = (frame.getWidth() - size) / 2;
+            final int y1 = (frame.getHeight() - size) / 2;
+            final int x2 = x1 + size - 1;
+            final int y2 = y1 + size;
+
+            // Small viewports are averaged several times per run to be measurable
+            final int repeats = Math.max(1, MIN_PIXELS_PER_RUN / (size * size));
+            double reference = Benchmarks.measure("per-pixel average, " + size + "x" + size, size * size * repeats,
+                    new Benchmarks.Body() {
+                        @Override
+                        public long run() {
+                            long sum = 0;
+                            for (int i = 0; i < repeats; i++) {
+                                sum += getReferenceAverage(frame, yuv, x1, y1, x2, y2);
+                            }
+                            return sum;
+                        }
+                    });
+            double rows = Benchmarks.measure("row-by-row average, " + size + "x" + size, size * size * repeats,
+                    new Benchmarks.Body() {
+                        @Override
+                        public long run() {
+                            long sum = 0;
+                            for (int i = 0; i < repeats; i++) {
+                                sum += ColorAnalyzerUtil.getAverageColorPixel(frame, yuv, x1, y1, x2, y2,
+                                        ColorAnalyzerUtil.AVERAGE_MODE_EXACT);
+                            }
+                            return sum;
+                        }
+                    });
+            Benchmarks.logSpeedup("row-by-row average speedup, " + size + "x" + size, reference, rows);
+        }
+    }
+
+    /**
+     * Compare the exact average with the per-pixel reference
+     */
+    private static void assertExactAverage(FrameDescriptor frame, byte[] yuv, int x1, int y1, int x2, int y2) {
+        assertEquals(x1 + "," + y1 + "," + x2 + "," + y2, getReferenceAverage(frame, yuv, x1, y1, x2, y2),
+                ColorAnalyzerUtil.getAverageColorPixel(frame, yuv, x1, y1, x2, y2, ColorAnalyzerUtil.AVERAGE_MODE_EXACT));
+    }
+
+    /**
+     * The averaging loop before it walked rows: column by column, converting every pixel on its
+     * own. x2 is inclusive and y2 exclusive, like the analysis bounds.
+     */
+    private static int getReferenceAverage(FrameDescriptor frame, byte[] yuv, int x1, int y1, int x2, int y2) {
+        int count = 0;
+        int red = 0;
+        int green = 0;
+        int blue = 0;
+        for (int x = x1; x <= x2; x++) {
+            for (int y = y1; y < y2; y++) {
+                int color = ColorAnalyzerUtil.getColorAtPointFixed(frame, yuv, x, y);
+                red += Color.red(color);
+                green += Color.green(color);
+                blue += Color.blue(color);
+                count++;
+            }
+        }
+        return Color.rgb(red / count, green / count, blue / count);
+    }
+
+    public void testAveragingDoesNotAllocate() {
+        FrameDescriptor frame = new FrameDescriptor(640, 360);
+        byte[] yuv = TestFrames.scene(frame, 9);
+        ColorAnalyzerUtil.RGBColor out = new ColorAnalyzerUtil.RGBColor(0, 0, 0);
+        RoiHistogram histogram = new RoiHistogram();
+        int[] modes = {
+                ColorAnalyzerUtil.AVERAGE_MODE_EXACT, ColorAnalyzerUtil.AVERAGE_MODE_YUV,
+                ColorAnalyzerUtil.AVERAGE_MODE_MEDIAN, ColorAnalyzerUtil.AVERAGE_MODE_TRIMMED
+        };
+        for (int mode : modes) {
+            ColorAnalyzerUtil.getAverageColor(frame, yuv, 200, 100, 263, 164, mode, out, histogram);
+            Debug.startAllocCounting();
+            Debug.resetThreadAllocCount();
+            for (int i = 0; i < 10; i++) {
+                ColorAnalyzerUtil.getAverageColor(frame, yuv, 200, 100, 263, 164, mode, out, histogram);
+                ColorAnalyzerUtil.getAverageColorPixel(frame, yuv, 200, 100, 263, 164, mode, 2, histogram);
+            }
+            Debug.stopAllocCounting();
+            assertEquals("mode " + mode, 0, Debug.getThreadAllocCount());
+        }
+    }
+
+    public void testFullSampleHasNoStandardError() {
+        FrameDescriptor frame = new FrameDescriptor(640, 360);
+        byte[] yuv = TestFrames.noise(frame, 5);
+        RoiStatistics expected = new RoiStatistics();
+        expected.reset(true);
+        ColorAnalyzerUtil.accumulateStatistics(frame, yuv, 100, 50, 163, 114, true, expected);
+        int[][] samplings = {
+                {ColorAnalyzerUtil.SAMPLING_MODE_STRIDE, 1},
+                {ColorAnalyzerUtil.SAMPLING_MODE_JITTERED, 1},
+                {ColorAnalyzerUtil.SAMPLING_MODE_BUDGET, 64 * 64},
+                {ColorAnalyzerUtil.SAMPLING_MODE_BUDGET, 100000}
+        };
+        RoiStatistics sampled = new RoiStatistics();
+        for (int[] sampling : samplings) {
+            sampled.reset(true);
+            ColorAnalyzerUtil.sampleStatistics(frame, yuv, 100, 50, 163, 114, sampling[0], sampling[1], 7, sampled);
+            assertEquals(expected.getCount(), sampled.getCount());
+            assertEquals(expected.getPopulation(), sampled.getPopulation());
+            assertEquals(expected.getAveragePixel(), sampled.getAveragePixel());
+            assertEquals(0, sampled.getStandardError(), 0);
+        }
+    }
+
+    public void testSampleMeanWithinStandardError() {
+        // Each channel mean is within two standard errors about 95% of the time, all three
+        // together somewhat less often
+        FrameDescriptor frame = new FrameDescriptor(640, 360);
+        byte[][] frames = {TestFrames.noise(frame, 6), TestFrames.scene(frame, 7)};
+        RoiStatistics full = new RoiStatistics();
+        RoiStatistics sampled = new RoiStatistics();
+        for (byte[] yuv : frames) {
+            full.reset(true);
+            ColorAnalyzerUtil.accumulateStatistics(frame, yuv, 0, 0, 639, 360, true, full);
+            int covered = 0;
+            for (int seed = 1; seed <= SAMPLE_SEEDS; seed++) {
+                sampled.reset(true);
+                ColorAnalyzerUtil.sampleStatistics(frame, yuv, 0, 0, 639, 360,
+                        ColorAnalyzerUtil.SAMPLING_MODE_BUDGET, 1024, seed, sampled);
+                assertTrue(sampled.getStandardError() > 0);
+                if (Math.abs(sampled.getMeanRed() - full.getMeanRed()) <= 2 * sampled.getStandardErrorRed()
+                        && Math.abs(sampled.getMeanGreen() - full.getMeanGreen()) <= 2 * sampled.getStandardErrorGreen()
+                        && Math.abs(sampled.getMeanBlue() - full.getMeanBlue()) <= 2 * sampled.getStandardErrorBlue()) {
+                    covered++;
+                }
+            }
+            assertTrue("covered " + covered, covered >= MIN_COVERAGE * SAMPLE_SEEDS);
+        }
+    }
+
+    public void testBenchmarkSampling() {
+        final FrameDescriptor frame = new FrameDescriptor(1280, 720);
+        final byte[] yuv = TestFrames.scene(frame, 8);
+        final RoiStatistics stats = new RoiStatistics();
+        final int x2 = frame.getWidth() - 1;
+        final int y2 = frame.getHeight();
+        RoiStatistics full = new RoiStatistics();
+        full.reset(true);
+        ColorAnalyzerUtil.accumulateStatistics(frame, yuv, 0, 0, x2, y2, true, full);
+        double everyPixel = Benchmarks.measure("every pixel, 1280x720", 1, new Benchmarks.Body() {
+            @Override
+            public long run() {
+                stats.reset(true);
+                ColorAnalyzerUtil.accumulateStatistics(frame, yuv, 0, 0, x2, y2, true, stats);
+                return stats.getSumRed();
+            }
+        });
+        for (final int budget : SAMPLE_BUDGETS) {
+            double sampled = Benchmarks.measure(budget + " samples, 1280x720", 1, new Benchmarks.Body() {
+                @Override
+                public long run() {
+                    stats.reset(true);
+                    ColorAnalyzerUtil.sampleStatistics(frame, yuv, 0, 0, x2, y2,
+                            ColorAnalyzerUtil.SAMPLING_MODE_BUDGET, budget, budget, stats);
+                    return stats.getSumRed();
+                }
+            });
+            double error = Math.max(Math.abs(stats.getMeanRed() - full.getMeanRed()),
+                    Math.max(Math.abs(stats.getMeanGreen() - full.getMeanGreen()),
+                            Math.abs(stats.getMeanBlue() - full.getMeanBlue())));
+            Log.i(Benchmarks.LOG_TAG, budget + " samples: standard error " + stats.getStandardError()
+                    + ", actual error " + error);
+            Benchmarks.logSpeedup(budget + " samples speedup", everyPixel, sampled);
+        }
+    }
+
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2014 Martin Brabham
+ * Copyright 2014 Daniel Velazco
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+package com.holoyolostudios.colorvision.colorlib.util;
+
+import android.os.Debug;
+import android.test.AndroidTestCase;
+import com.holoyolostudios.colorvision.colorlib.Benchmarks;
+
+/**
+ * ParallelRoiAnalyzerTest
+ * <p/>
+ * Checks that {@link ParallelRoiAnalyzer} gathers exactly the statistics of the sequential pass
+ * for any number of bands, without allocating, and measures how it scales with the bands.
+ * <p/>
+ *
+ * @author Martin Brabham
+ * @author Daniel Velazco
+ */
+public class ParallelRoiAnalyzerTest extends AndroidTestCase {
+
+    // Constants
+    private static final int MAX_PARALLELISM = 4;
+    private static final int CALLS = 50;
+
+    public void testMatchesSequentialStatistics() {
+        RoiStatistics expected = new RoiStatistics();
+        RoiStatistics actual = new RoiStatistics();
+        for (int[] size : TestFrames.PREVIEW_SIZES) {
+            FrameDescriptor frame = new FrameDescriptor(size[0], size[1]);
+            byte[] yuv = TestFrames.noise(frame, size[0]);
+            int[][] areas = {
+                    {0, 0, frame.getWidth() - 1, frame.getHeight()},
+                    {3, 5, frame.getWidth() / 2, frame.getHeight() - 7},
+                    {10, 10, 10, 17}
+            };
+            for (int parallelism = 1; parallelism <= MAX_PARALLELISM; parallelism++) {
+                ParallelRoiAnalyzer analyzer = new ParallelRoiAnalyzer(parallelism, 1);
+                try {
+                    for (int[] area : areas) {
+                        for (int squares = 0; squares < 2; squares++) {
+                            expected.reset(squares == 1);
+                            ColorAnalyzerUtil.accumulateStatistics(frame, yuv, area[0], area[1], area[2], area[3],
+                                    squares == 1, expected);
+                            analyzer.computeStatistics(frame, yuv, area[0], area[1], area[2], area[3],
+                                    squares == 1, actual);
+                            assertStatisticsEqual(expected, actual);
+                        }
+                    }
+                } finally {
+                    analyzer.shutdown();
+                }
+            }
+        }
+    }
+
+    public void testBandCount() {
+        ParallelRoiAnalyzer analyzer = new ParallelRoiAnalyzer(4, 1000);
+        try {
+            assertEquals(4, analyzer.getParallelism());
+            assertEquals(1, analyzer.getBandCount(0, 0, 9, 99));
+            assertEquals(2, analyzer.getBandCount(0, 0, 9, 200));
+            assertEquals(4, analyzer.getBandCount(0, 0, 639, 360));
+            assertEquals(3, analyzer.getBandCount(0, 0, 9999, 3));
+        } finally {
+            analyzer.shutdown();
+        }
+    }
+
+    public void testSequentialAfterShutdown() {
+        FrameDescriptor frame = new FrameDescriptor(640, 360);
+        byte[] yuv = TestFrames.scene(frame, 1);
+        RoiStatistics expected = new RoiStatistics();
+        RoiStatistics actual = new RoiStatistics();
+        expected.reset(true);
+        ColorAnalyzerUtil.accumulateStatistics(frame, yuv, 0, 0, 639, 360, true, expected);
+        ParallelRoiAnalyzer analyzer = new ParallelRoiAnalyzer(MAX_PARALLELISM, 1);
+        analyzer.shutdown();
+        analyzer.computeStatistics(frame, yuv, 0, 0, 639, 360, true, actual);
+        assertStatisticsEqual(expected, actual);
+    }
+
+    public void testComputeDoesNotAllocate() {
+        FrameDescriptor frame = new FrameDescriptor(640, 360);
+        byte[] yuv = TestFrames.scene(frame, 2);
+        RoiStatistics stats = new RoiStatistics();
+        ParallelRoiAnalyzer analyzer = new ParallelRoiAnalyzer(MAX_PARALLELISM, 1);
+        try {
+            analyzer.computeStatistics(frame, yuv, 0, 0, 639, 360, true, stats);
+            Debug.startAllocCounting();
+            Debug.resetThreadAllocCount();
+            for (int i = 0; i < CALLS; i++) {
+                analyzer.computeStatistics(frame, yuv, 0, 0, 639, 360, true, stats);
+            }
+            Debug.stopAllocCounting();
+            assertEquals(0, Debug.getThreadAllocCount());
+        } finally {
+            analyzer.shutdown();
+        }
+    }
+
+    public void testBenchmarkScaling() {
+        int processors = Runtime.getRuntime().availableProcessors();
+        for (int[] size : TestFrames.PREVIEW_SIZES) {
+            final FrameDescriptor frame = new FrameDescriptor(size[0], size[1]);
+            final byte[] yuv = TestFrames.scene(frame, 3);
+            final RoiStatistics stats = new RoiStatistics();
+            int pixels = frame.getWidth() * frame.getHeight();
+            double sequential = 0;
+            for (int parallelism = 1; parallelism <= Math.max(processors, 2); parallelism++) {
+                final ParallelRoiAnalyzer analyzer = new ParallelRoiAnalyzer(parallelism, 1);
+                try {
+                    double time = Benchmarks.measure(parallelism + " bands, " + size[0] + "x" + size[1], pixels,
+                            new Benchmarks.Body() {
+                                @Override
+                                public long run() {
+                                    analyzer.computeStatistics(frame, yuv, 0, 0, frame.getWidth() - 1,
+                                            frame.getHeight(), true, stats);
+                                    return stats.getSumRed();
+                                }
+                            });
+                    if (parallelism == 1) {
+                        sequential = time;
+                    } else {
+                        Benchmarks.logSpeedup(parallelism + " bands speedup on " + processors + " processors, "
+                                + size[0] + "x" + size[1], sequential, time);
+                    }
+                } finally {
+                    analyzer.shutdown();
+                }
+            }
+        }
+    }
+
+    /**
+     * Compare every statistic
+     */
+    private static void assertStatisticsEqual(RoiStatistics expected, RoiStatistics actual) {
+        assertEquals(expected.getPopulation(), actual.getPopulation());
+        assertEquals(expected.getCount(), actual.getCount());
+        assertEquals(expected.hasVariance(), actual.hasVariance());
+        assertEquals(expected.getSumRed(), actual.getSumRed());
+        assertEquals(expected.getSumGreen(), actual.getSumGreen());
+        assertEquals(expected.getSumBlue(), actual.getSumBlue());
+        assertEquals(expected.getSumSquaresRed(), actual.getSumSquaresRed());
+        assertEquals(expected.getSumSquaresGreen(), actual.getSumSquaresGreen());
+        assertEquals(expected.getSumSquaresBlue(), actual.getSumSquaresBlue());
+        assertEquals(expected.getMinRed(), actual.getMinRed());
+        assertEquals(expected.getMaxRed(), actual.getMaxRed());
+        assertEquals(expected.getMinGreen(), actual.getMinGreen());
+        assertEquals(expected.getMaxGreen(), actual.getMaxGreen());
+        assertEquals(expected.getMinBlue(), actual.getMinBlue());
+        assertEquals(expected.getMaxBlue(), actual.getMaxBlue());
+        assertEquals(expected.getAveragePixel(), actual.getAveragePixel());
+    }
+
+}
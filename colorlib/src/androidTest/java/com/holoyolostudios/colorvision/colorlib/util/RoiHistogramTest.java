@@ -0,0 +1,187 @@
+/*
+ * Copyright 2014 Martin Brabham
+ * Copyright 2014 Daniel Velazco
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+package com.holoyolostudios.colorvision.colorlib.util;
+
+import android.graphics.Color;
+import android.test.AndroidTestCase;
+import com.holoyolostudios.colorvision.colorlib.Benchmarks;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * RoiHistogramTest
+ * <p/>
+ * Checks the histogram median and trimmed mean of {@link RoiHistogram} against sorting the
+ * pixels of the area, and measures them against the plain mean.
+ * <p/>
+ *
+ * @author Martin Brabham
+ * @author Daniel Velazco
+ */
+public class RoiHistogramTest extends AndroidTestCase {
+
+    // Constants
+    private static final double[] TRIMS = {0, 0.05, RoiHistogram.DEFAULT_TRIM, 0.33, 0.5};
+    private static final int AREAS = 200;
+    private static final int[] VIEWPORT_SIZES = {64, 128, 256};
+
+    public void testMatchesSortReference() {
+        FrameDescriptor frame = new FrameDescriptor(320, 240);
+        byte[][] frames = {TestFrames.noise(frame, 1), TestFrames.scene(frame, 2)};
+        RoiHistogram histogram = new RoiHistogram();
+        Random random = new Random(3);
+        for (byte[] yuv : frames) {
+            for (int i = 0; i < AREAS; i++) {
+                int x1 = random.nextInt(frame.getWidth() - 40);
+                int y1 = random.nextInt(frame.getHeight() - 40);
+                int x2 = x1 + random.nextInt(40);
+                int y2 = y1 + 1 + random.nextInt(40);
+                int stride = 1 + random.nextInt(3);
+                int[][] channels = getSortedChannels(frame, yuv, x1, y1, x2, y2, stride);
+
+                String area = x1 + "," + y1 + "," + x2 + "," + y2 + " stride " + stride;
+                assertEquals(area, Color.rgb(getMedian(channels[0]), getMedian(channels[1]), getMedian(channels[2])),
+                        ColorAnalyzerUtil.getRobustColorPixel(frame, yuv, x1, y1, x2, y2,
+                                ColorAnalyzerUtil.AVERAGE_MODE_MEDIAN, stride, histogram));
+                assertEquals(channels[0].length, histogram.getCount());
+                for (double trim : TRIMS) {
+                    assertEquals(area + " trim " + trim, getTrimmedMean(channels[0], trim), histogram.getTrimmedMeanRed(trim));
+                    assertEquals(area + " trim " + trim, getTrimmedMean(channels[1], trim), histogram.getTrimmedMeanGreen(trim));
+                    assertEquals(area + " trim " + trim, getTrimmedMean(channels[2], trim), histogram.getTrimmedMeanBlue(trim));
+                }
+            }
+        }
+    }
+
+    public void testTrimZeroIsMean() {
+        FrameDescriptor frame = new FrameDescriptor(320, 240);
+        byte[] yuv = TestFrames.noise(frame, 4);
+        RoiHistogram histogram = new RoiHistogram();
+        ColorAnalyzerUtil.accumulateHistogram(frame, yuv, 11, 7, 200, 150, 1, histogram);
+        assertEquals(ColorAnalyzerUtil.getAverageColorPixel(frame, yuv, 11, 7, 200, 150,
+                ColorAnalyzerUtil.AVERAGE_MODE_EXACT), histogram.getTrimmedMeanPixel(0));
+    }
+
+    public void testEmptyHistogram() {
+        RoiHistogram histogram = new RoiHistogram();
+        assertEquals(0, histogram.getCount());
+        assertEquals(Color.rgb(0, 0, 0), histogram.getMedianPixel());
+        assertEquals(Color.rgb(0, 0, 0), histogram.getTrimmedMeanPixel());
+    }
+
+    public void testIgnoresHighlight() {
+        // A saturated highlight over a tenth of a gray area pulls the mean up, not the estimates
+        FrameDescriptor frame = new FrameDescriptor(100, 100);
+        byte[] yuv = new byte[frame.getBufferSize()];
+        Arrays.fill(yuv, (byte) 128);
+        for (int y = 0; y < 10; y++) {
+            for (int x = 0; x < 100; x++) {
+                yuv[frame.getYIndex(x, y)] = (byte) 255;
+            }
+        }
+        int gray = ColorAnalyzerUtil.getColorAtPointFixed(frame, yuv, 50, 50);
+        int mean = ColorAnalyzerUtil.getAverageColorPixel(frame, yuv, 0, 0, 99, 100, ColorAnalyzerUtil.AVERAGE_MODE_EXACT);
+        assertTrue(Color.red(mean) > Color.red(gray) + 10);
+        assertEquals(gray, ColorAnalyzerUtil.getAverageColorPixel(frame, yuv, 0, 0, 99, 100,
+                ColorAnalyzerUtil.AVERAGE_MODE_MEDIAN));
+        assertEquals(gray, ColorAnalyzerUtil.getAverageColorPixel(frame, yuv, 0, 0, 99, 100,
+                ColorAnalyzerUtil.AVERAGE_MODE_TRIMMED));
+    }
+
+    public void testBenchmarkEstimators() {
+        final FrameDescriptor frame = new FrameDescriptor(1280, 720);
+        final byte[] yuv = TestFrames.scene(frame, 5);
+        final RoiHistogram histogram = new RoiHistogram();
+        for (int size : VIEWPORT_SIZES) {
+            final int x1 = (frame.getWidth() - size) / 2;
+            final int y1 = (frame.getHeight() - size) / 2;
+            final int x2 = x1 + size - 1;
+            final int y2 = y1 + size;
+            double mean = Benchmarks.measure("mean, " + size + "x" + size, size * size, new Benchmarks.Body() {
+                @Override
+                public long run() {
+                    return ColorAnalyzerUtil.getAverageColorPixel(frame, yuv, x1, y1, x2, y2,
+                            ColorAnalyzerUtil.AVERAGE_MODE_EXACT);
+                }
+            });
+            double median = Benchmarks.measure("median, " + size + "x" + size, size * size, new Benchmarks.Body() {
+                @Override
+                public long run() {
+                    return ColorAnalyzerUtil.getRobustColorPixel(frame, yuv, x1, y1, x2, y2,
+                            ColorAnalyzerUtil.AVERAGE_MODE_MEDIAN, 1, histogram);
+                }
+            });
+            double trimmed = Benchmarks.measure("trimmed mean, " + size + "x" + size, size * size, new Benchmarks.Body() {
+                @Override
+                public long run() {
+                    return ColorAnalyzerUtil.getRobustColorPixel(frame, yuv, x1, y1, x2, y2,
+                            ColorAnalyzerUtil.AVERAGE_MODE_TRIMMED, 1, histogram);
+                }
+            });
+            Benchmarks.logSpeedup("median speed relative to mean, " + size + "x" + size, mean, median);
+            Benchmarks.logSpeedup("trimmed mean speed relative to mean, " + size + "x" + size, mean, trimmed);
+        }
+    }
+
+    /**
+     * Convert every stride-th pixel and sort each channel on its own
+     */
+    private static int[][] getSortedChannels(FrameDescriptor frame, byte[] yuv, int x1, int y1, int x2, int y2,
+                                             int stride) {
+        int columns = (x2 - x1) / stride + 1;
+        int rows = (y2 - y1 - 1) / stride + 1;
+        int[][] channels = new int[3][columns * rows];
+        int i = 0;
+        for (int y = y1; y < y2; y += stride) {
+            for (int x = x1; x <= x2; x += stride) {
+                int color = ColorAnalyzerUtil.getColorAtPointFixed(frame, yuv, x, y);
+                channels[0][i] = Color.red(color);
+                channels[1][i] = Color.green(color);
+                channels[2][i] = Color.blue(color);
+                i++;
+            }
+        }
+        for (int[] channel : channels) {
+            Arrays.sort(channel);
+        }
+        return channels;
+    }
+
+    /**
+     * Lower median of sorted values
+     */
+    private static int getMedian(int[] sorted) {
+        return sorted[(sorted.length - 1) / 2];
+    }
+
+    /**
+     * Truncated mean of the sorted values left after dropping the trim fraction at each end
+     */
+    private static int getTrimmedMean(int[] sorted, double trim) {
+        int trimmed = (int) (sorted.length * trim);
+        if (sorted.length - 2 * trimmed <= 0) {
+            return getMedian(sorted);
+        }
+        long sum = 0;
+        for (int i = trimmed; i < sorted.length - trimmed; i++) {
+            sum += sorted[i];
+        }
+        return (int) (sum / (sorted.length - 2 * trimmed));
+    }
+
+}
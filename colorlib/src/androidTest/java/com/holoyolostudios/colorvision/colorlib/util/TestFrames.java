@@ -0,0 +1,81 @@
+/*
+ * Copyright 2014 Martin Brabham
+ * Copyright 2014 Daniel Velazco
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+package com.holoyolostudios.colorvision.colorlib.util;
+
+import java.util.Random;
+
+/**
+ * TestFrames
+ * <p/>
+ * NV21 frames for the analysis tests: pure noise, which exercises clamping and every table
+ * entry, and a smooth scene with mild noise, which is what a camera pointed at an object
+ * delivers.
+ * <p/>
+ *
+ * @author Martin Brabham
+ * @author Daniel Velazco
+ */
+public final class TestFrames {
+
+    // Preview sizes the analysis runs on
+    public static final int[][] PREVIEW_SIZES = {{640, 360}, {1280, 720}, {1920, 1080}};
+
+    private TestFrames() {
+    }
+
+    /**
+     * Fill a frame with random bytes
+     *
+     * @param frame {@link FrameDescriptor}
+     * @param seed  {@link long}
+     * @return {@link byte} array of {@link FrameDescriptor#getBufferSize()} bytes
+     */
+    public static byte[] noise(FrameDescriptor frame, long seed) {
+        byte[] yuv = new byte[frame.getBufferSize()];
+        new Random(seed).nextBytes(yuv);
+        return yuv;
+    }
+
+    /**
+     * Fill a frame with gradients in luma and chroma plus a few levels of noise
+     *
+     * @param frame {@link FrameDescriptor}
+     * @param seed  {@link long}
+     * @return {@link byte} array of {@link FrameDescriptor#getBufferSize()} bytes
+     */
+    public static byte[] scene(FrameDescriptor frame, long seed) {
+        Random random = new Random(seed);
+        byte[] yuv = new byte[frame.getBufferSize()];
+        int width = frame.getWidth();
+        int height = frame.getHeight();
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int luma = 60 + 120 * x / width + 20 * y / height + random.nextInt(9) - 4;
+                yuv[frame.getYIndex(x, y)] = (byte) luma;
+            }
+        }
+        for (int y = 0; y < height; y += 2) {
+            for (int x = 0; x < width; x += 2) {
+                int vu = frame.getVuIndex(x, y);
+                yuv[vu] = (byte) (110 + 30 * y / height + random.nextInt(5) - 2);
+                yuv[vu + 1] = (byte) (140 - 30 * x / width + random.nextInt(5) - 2);
+            }
+        }
+        return yuv;
+    }
+
+}
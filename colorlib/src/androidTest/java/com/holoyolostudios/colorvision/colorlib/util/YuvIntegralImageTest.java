@@ -0,0 +1,159 @@
+/*
+ * Copyright 2014 Martin Brabham
+ * Copyright 2014 Daniel Velazco
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+package com.holoyolostudios.colorvision.colorlib.util;
+
+import android.test.AndroidTestCase;
+import com.holoyolostudios.colorvision.colorlib.Benchmarks;
+
+import java.util.Random;
+
+/**
+ * YuvIntegralImageTest
+ * <p/>
+ * Checks the sums of {@link YuvIntegralImage} against direct sums over the frame and measures
+ * how many regions a frame needs before building the tables pays off.
+ * <p/>
+ *
+ * @author Martin Brabham
+ * @author Daniel Velazco
+ */
+public class YuvIntegralImageTest extends AndroidTestCase {
+
+    // Constants
+    private static final int RECTANGLES = 2000;
+    private static final int REGION_SIZE = 64;
+    private static final int[] REGION_COUNTS = {1, 4, 16, 64, 128};
+
+    public void testSumsMatchDirectSums() {
+        FrameDescriptor frame = new FrameDescriptor(64, 48);
+        byte[] yuv = TestFrames.noise(frame, 1);
+        YuvIntegralImage image = new YuvIntegralImage();
+        image.build(frame, yuv);
+        assertEquals(frame.getWidth(), image.getWidth());
+        assertEquals(frame.getHeight(), image.getHeight());
+
+        Random random = new Random(2);
+        for (int i = 0; i < RECTANGLES; i++) {
+            int x1 = random.nextInt(frame.getWidth());
+            int x2 = x1 + random.nextInt(frame.getWidth() - x1);
+            int y1 = random.nextInt(frame.getHeight());
+            int y2 = y1 + 1 + random.nextInt(frame.getHeight() - y1);
+            assertSums(frame, yuv, image, x1, y1, x2, y2);
+        }
+        assertSums(frame, yuv, image, 0, 0, frame.getWidth() - 1, frame.getHeight());
+    }
+
+    public void testRebuildReusesTables() {
+        FrameDescriptor frame = new FrameDescriptor(640, 360);
+        YuvIntegralImage image = new YuvIntegralImage();
+        image.build(frame, TestFrames.noise(frame, 3));
+        byte[] yuv = TestFrames.scene(frame, 4);
+        image.build(frame, yuv);
+        assertSums(frame, yuv, image, 0, 0, frame.getWidth() - 1, frame.getHeight());
+        assertSums(frame, yuv, image, 101, 33, 402, 250);
+
+        FrameDescriptor smaller = new FrameDescriptor(320, 180);
+        byte[] small = TestFrames.noise(smaller, 5);
+        image.build(smaller, small);
+        assertSums(smaller, small, image, 0, 0, smaller.getWidth() - 1, smaller.getHeight());
+    }
+
+    public void testAveragePixelMatchesYuvMode() {
+        FrameDescriptor frame = new FrameDescriptor(640, 360);
+        byte[] yuv = TestFrames.scene(frame, 6);
+        YuvIntegralImage image = new YuvIntegralImage();
+        image.build(frame, yuv);
+        Random random = new Random(7);
+        for (int i = 0; i < RECTANGLES; i++) {
+            int x1 = random.nextInt(frame.getWidth() - REGION_SIZE);
+            int y1 = random.nextInt(frame.getHeight() - REGION_SIZE);
+            int x2 = x1 + random.nextInt(REGION_SIZE);
+            int y2 = y1 + 1 + random.nextInt(REGION_SIZE);
+            long count = (long) (x2 - x1 + 1) * (y2 - y1);
+            assertEquals(ColorAnalyzerUtil.getPixelFromYuvSums(directSum(frame, yuv, x1, y1, x2, y2, 0),
+                            directSum(frame, yuv, x1, y1, x2, y2, 1), directSum(frame, yuv, x1, y1, x2, y2, 2), (int) count),
+                    image.getAveragePixel(x1, y1, x2, y2));
+        }
+    }
+
+    public void testBenchmarkBreakEven() {
+        final FrameDescriptor frame = new FrameDescriptor(640, 360);
+        final byte[] yuv = TestFrames.scene(frame, 8);
+        final YuvIntegralImage image = new YuvIntegralImage();
+        for (final int regions : REGION_COUNTS) {
+            final int[] lefts = new int[regions];
+            final int[] tops = new int[regions];
+            Random random = new Random(regions);
+            for (int i = 0; i < regions; i++) {
+                lefts[i] = random.nextInt(frame.getWidth() - REGION_SIZE);
+                tops[i] = random.nextInt(frame.getHeight() - REGION_SIZE);
+            }
+            double direct = Benchmarks.measure("direct averages, " + regions + " regions", 1, new Benchmarks.Body() {
+                @Override
+                public long run() {
+                    long sum = 0;
+                    for (int i = 0; i < regions; i++) {
+                        sum += ColorAnalyzerUtil.getAverageColorPixel(frame, yuv, lefts[i], tops[i],
+                                lefts[i] + REGION_SIZE - 1, tops[i] + REGION_SIZE, ColorAnalyzerUtil.AVERAGE_MODE_YUV);
+                    }
+                    return sum;
+                }
+            });
+            double tables = Benchmarks.measure("summed-area tables, " + regions + " regions", 1, new Benchmarks.Body() {
+                @Override
+                public long run() {
+                    image.build(frame, yuv);
+                    long sum = 0;
+                    for (int i = 0; i < regions; i++) {
+                        sum += image.getAveragePixel(lefts[i], tops[i], lefts[i] + REGION_SIZE - 1, tops[i] + REGION_SIZE);
+                    }
+                    return sum;
+                }
+            });
+            Benchmarks.logSpeedup("summed-area tables speedup, " + regions + " regions of " + REGION_SIZE + "x"
+                    + REGION_SIZE + " in " + frame.getWidth() + "x" + frame.getHeight(), direct, tables);
+        }
+    }
+
+    /**
+     * Compare the three plane sums with direct sums
+     */
+    private static void assertSums(FrameDescriptor frame, byte[] yuv, YuvIntegralImage image,
+                                   int x1, int y1, int x2, int y2) {
+        String area = x1 + "," + y1 + "," + x2 + "," + y2;
+        assertEquals(area, directSum(frame, yuv, x1, y1, x2, y2, 0), image.getSumY(x1, y1, x2, y2));
+        assertEquals(area, directSum(frame, yuv, x1, y1, x2, y2, 1), image.getSumU(x1, y1, x2, y2));
+        assertEquals(area, directSum(frame, yuv, x1, y1, x2, y2, 2), image.getSumV(x1, y1, x2, y2));
+    }
+
+    /**
+     * Sum one plane pixel by pixel, 0 for Y, 1 for U and 2 for V. Every pixel counts the chroma
+     * of its 2x2 block.
+     */
+    private static long directSum(FrameDescriptor frame, byte[] yuv, int x1, int y1, int x2, int y2, int plane) {
+        long sum = 0;
+        for (int y = y1; y < y2; y++) {
+            for (int x = x1; x <= x2; x++) {
+                int vu = frame.getVuIndex(x, y);
+                int index = (plane == 0) ? frame.getYIndex(x, y) : (plane == 1) ? vu + 1 : vu;
+                sum += 0xFF & yuv[index];
+            }
+        }
+        return sum;
+    }
+
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2014 Martin Brabham
+ * Copyright 2014 Daniel Velazco
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+package com.holoyolostudios.colorvision.colorlib.view;
+
+import android.os.Debug;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Message;
+import android.test.AndroidTestCase;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.widget.TextView;
+import com.holoyolostudios.colorvision.colorlib.R;
+import com.holoyolostudios.colorvision.colorlib.colors.ColorNameCache;
+import com.holoyolostudios.colorvision.colorlib.colors.ColorPalette;
+import com.holoyolostudios.colorvision.colorlib.util.ColorAnalyzerUtil;
+
+import java.util.Random;
+
+/**
+ * ColorReadingPublisherTest
+ * <p/>
+ * Checks that the path from a reading to the text on screen, the hex code written into a char
+ * array, the cached color label and {@link ColorReadingPublisher}, allocates nothing once the
+ * labels have been built.
+ * <p/>
+ *
+ * @author Martin Brabham
+ * @author Daniel Velazco
+ */
+public class ColorReadingPublisherTest extends AndroidTestCase {
+
+    // Constants
+    private static final int READINGS = 64;
+    private static final int ROUNDS = 20;
+
+    // Members
+    private ColorNameCache mCache = null;
+    private ColorNameCache.Snapshot mNames = null;
+    private TextView mHexLabel = null;
+    private TextView mNameLabel = null;
+    private ColorReadingPublisher mPublisher = null;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mCache = ColorNameCache.createInstance(getContext());
+        assertTrue(mCache.isInitialized());
+        mNames = mCache.getSnapshot();
+
+        // Built on the test thread, so the progress bars refresh in place instead of queueing
+        LayoutInflater inflater = LayoutInflater.from(getContext());
+        ColorProgressBar rBar = (ColorProgressBar) inflater.inflate(R.layout.widget_red_pbar, null);
+        ColorProgressBar gBar = (ColorProgressBar) inflater.inflate(R.layout.widget_green_pbar, null);
+        ColorProgressBar bBar = (ColorProgressBar) inflater.inflate(R.layout.widget_blue_pbar, null);
+        mHexLabel = new TextView(getContext());
+        mNameLabel = new TextView(getContext());
+        mPublisher = new ColorReadingPublisher(new ManualHandler(), mCache, rBar, gBar, bBar,
+                mHexLabel, mNameLabel, new View(getContext()));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mPublisher.cancel();
+        mCache.destroy();
+        super.tearDown();
+    }
+
+    public void testShowsReading() {
+        ColorPalette palette = mNames.getPalette();
+        char[] hex = new char[ColorAnalyzerUtil.HEX_CODE_LENGTH];
+        ColorAnalyzerUtil.RGBColor[] readings = createReadings();
+        for (ColorAnalyzerUtil.RGBColor reading : readings) {
+            mPublisher.publish(reading, 1.0);
+            mPublisher.run();
+
+            int length = ColorAnalyzerUtil.formatHexCode(reading.getPixel(), hex, 0);
+            assertEquals(new String(hex, 0, length), mHexLabel.getText().toString());
+            int index = mNames.findNearest(reading.getRed(), reading.getGreen(), reading.getBlue());
+            assertEquals(palette.getLabel(index), mNameLabel.getText());
+        }
+    }
+
+    public void testLowUniformityKeepsName() {
+        ColorAnalyzerUtil.RGBColor[] readings = createReadings();
+        mPublisher.setMinUniformity(ColorReadingPublisher.DEFAULT_MIN_UNIFORMITY);
+        mPublisher.publish(readings[0], 1.0);
+        mPublisher.run();
+        CharSequence name = mNameLabel.getText();
+        CharSequence hex = mHexLabel.getText().toString();
+
+        mPublisher.publish(readings[1], ColorReadingPublisher.DEFAULT_MIN_UNIFORMITY / 2);
+        mPublisher.run();
+        assertEquals(name, mNameLabel.getText());
+        assertFalse(hex.equals(mHexLabel.getText().toString()));
+    }
+
+    public void testReadingToTextDoesNotAllocate() {
+        char[] hex = new char[ColorAnalyzerUtil.HEX_CODE_LENGTH];
+        ColorAnalyzerUtil.RGBColor[] readings = createReadings();
+
+        // Build every label, fill the message pool and let the path settle before counting
+        for (int round = 0; round < ROUNDS; round++) {
+            for (ColorAnalyzerUtil.RGBColor reading : readings) {
+                showReading(reading, hex);
+            }
+        }
+
+        Debug.startAllocCounting();
+        Debug.resetThreadAllocCount();
+        for (int round = 0; round < ROUNDS; round++) {
+            for (ColorAnalyzerUtil.RGBColor reading : readings) {
+                showReading(reading, hex);
+            }
+        }
+        Debug.stopAllocCounting();
+        assertEquals(0, Debug.getThreadAllocCount());
+    }
+
+    /**
+     * One reading through the whole path, as the analysis and UI threads take it
+     */
+    private void showReading(ColorAnalyzerUtil.RGBColor reading, char[] hex) {
+        ColorAnalyzerUtil.formatHexCode(reading.getPixel(), hex, 0);
+        int index = mNames.findNearest(reading.getRed(), reading.getGreen(), reading.getBlue());
+        assertNotNull(mNames.getColorName(index));
+        mPublisher.publish(reading, 1.0);
+        mPublisher.run();
+    }
+
+    /**
+     * Readings near random palette colors, each one different from the one before
+     */
+    private ColorAnalyzerUtil.RGBColor[] createReadings() {
+        ColorPalette palette = mNames.getPalette();
+        Random random = new Random(READINGS);
+        ColorAnalyzerUtil.RGBColor[] readings = new ColorAnalyzerUtil.RGBColor[READINGS];
+        for (int i = 0; i < READINGS; i++) {
+            int index = random.nextInt(palette.size());
+            readings[i] = new ColorAnalyzerUtil.RGBColor(
+                    jitter(palette.getRed(index), random),
+                    jitter(palette.getGreen(index), random),
+                    (i % 2) + (jitter(palette.getBlue(index), random) & ~1));
+        }
+        return readings;
+    }
+
+    private static int jitter(int value, Random random) {
+        return Math.max(0, Math.min(255, value + random.nextInt(9) - 4));
+    }
+
+    /**
+     * Handler that never queues, the test runs the publisher itself. Posted messages go straight
+     * back to the pool so a post costs what it costs on a looper that keeps up.
+     */
+    private static final class ManualHandler extends Handler {
+
+        private ManualHandler() {
+            super(Looper.getMainLooper());
+        }
+
+        @Override
+        public boolean sendMessageAtTime(Message msg, long uptimeMillis) {
+            msg.recycle();
+            return true;
+        }
+
+    }
+
+}
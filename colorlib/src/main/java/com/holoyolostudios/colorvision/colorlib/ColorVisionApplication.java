@@ -36,7 +36,7 @@ public class ColorVisionApplication extends Application {
         super.onCreate();
 
         // Create a new instance for the ColorNameCache
-        ColorNameCache.createInstance();
+        ColorNameCache.createInstance(this);
 
     }
 
@@ -0,0 +1,356 @@
+/*
+ * Copyright 2014 Martin Brabham
+ * Copyright 2014 Daniel Velazco
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+package com.holoyolostudios.colorvision.colorlib.colors;
+
+/**
+ * ColorFamilyMatcher
+ * <p/>
+ * Two-stage matcher using the shade families of a {@link ColorPalette}, such as white, blue or
+ * green. The RGB cube is divided into buckets of hue, saturation and value, and a lookup first
+ * classifies the query into its bucket with a few integer operations, then only searches the
+ * colors listed for that bucket.
+ * <p/>
+ * The lists are built up front from the RGB bounding box of every bucket. Some palette color is
+ * at most U away from every point of the box, where U is the smallest distance from any palette
+ * color to the farthest corner of the box. A color farther than U from the whole box can
+ * therefore never be the nearest one for a query in the bucket, and is left out. What remains
+ * are the families the bucket lies in plus the colors of neighbouring families that come close
+ * enough, usually a small part of the palette. Equally close colors are kept too and the list
+ * is in palette order, so the result is exactly the index
+ * {@link ColorPalette#findNearest(int, int, int)} returns, including its tie breaking.
+ * <p/>
+ * {@link #findFamily(int, int, int)} is a fast path for callers that only need the family, such
+ * as "blue" or "green". Buckets whose colors all belong to one family answer it without
+ * searching, the others with one bucket search.
+ * <p/>
+ *
+ * @author Daniel Velazco
+ * @author Martin Brabham
+ */
+public class ColorFamilyMatcher implements ColorMatcher {
+
+    // Buckets, the hue buckets have to split the six hue sectors evenly
+    public static final int HUE_BUCKETS = 24;
+    public static final int SATURATION_BUCKETS = 8;
+    public static final int VALUE_BUCKETS = 8;
+    public static final int BUCKETS = HUE_BUCKETS * SATURATION_BUCKETS * VALUE_BUCKETS;
+
+    // Returned by getBucketFamily for buckets holding colors of several families
+    public static final int MIXED = -1;
+
+    // Hue as computed by getBucket, six sectors of 256 steps
+    private static final int HUE_SECTOR = 256;
+    private static final int HUE_RANGE = 6 * HUE_SECTOR;
+
+    // Widens the bucket boxes to cover the rounding of the integer hue in getBucket
+    private static final int BOX_MARGIN = 2;
+
+    // Members
+    private final ColorPalette mPalette;
+    private final int[] mBucketStarts;
+    private final int[] mIndices;
+    private final int[] mReds;
+    private final int[] mGreens;
+    private final int[] mBlues;
+    private final int[] mBucketFamilies;
+
+    /**
+     * Constructor
+     *
+     * @param palette {@link ColorPalette}
+     */
+    public ColorFamilyMatcher(ColorPalette palette) {
+        int size = palette.size();
+        mPalette = palette;
+        int[] reds = new int[size];
+        int[] greens = new int[size];
+        int[] blues = new int[size];
+        for (int i = 0; i < size; i++) {
+            reds[i] = palette.getRed(i);
+            greens[i] = palette.getGreen(i);
+            blues[i] = palette.getBlue(i);
+        }
+
+        // Count the colors each bucket keeps first, so the lists fit in flat arrays
+        int[] boxes = new int[6 * BUCKETS];
+        int[] limits = new int[BUCKETS];
+        mBucketStarts = new int[BUCKETS + 1];
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            int box = 6 * bucket;
+            getBucketBox(bucket, boxes, box);
+            int limit = Integer.MAX_VALUE;
+            for (int i = 0; i < size; i++) {
+                limit = Math.min(limit, getFarthestDistance(boxes, box, reds[i], greens[i], blues[i]));
+            }
+            limits[bucket] = limit;
+            mBucketStarts[bucket + 1] = mBucketStarts[bucket]
+                    + collect(boxes, box, limit, reds, greens, blues, null, 0);
+        }
+        int total = mBucketStarts[BUCKETS];
+        mIndices = new int[total];
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            collect(boxes, 6 * bucket, limits[bucket], reds, greens, blues, mIndices, mBucketStarts[bucket]);
+        }
+
+        // Copy the colors next to each other in list order and note the buckets holding a
+        // single family
+        mReds = new int[total];
+        mGreens = new int[total];
+        mBlues = new int[total];
+        for (int j = 0; j < total; j++) {
+            mReds[j] = reds[mIndices[j]];
+            mGreens[j] = greens[mIndices[j]];
+            mBlues[j] = blues[mIndices[j]];
+        }
+        mBucketFamilies = new int[BUCKETS];
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            int family = MIXED;
+            for (int j = mBucketStarts[bucket]; j < mBucketStarts[bucket + 1]; j++) {
+                int shadeId = palette.getShadeId(mIndices[j]);
+                family = (j == mBucketStarts[bucket] || shadeId == family) ? shadeId : MIXED;
+            }
+            mBucketFamilies[bucket] = family;
+        }
+    }
+
+    /**
+     * Find the palette colors no farther from a box than the limit, in palette order, and store
+     * their indices from the given position unless indices is null
+     *
+     * @return the number of colors found
+     */
+    private static int collect(int[] boxes, int box, int limit, int[] reds, int[] greens, int[] blues,
+                               int[] indices, int position) {
+        int size = reds.length;
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if (getNearestDistance(boxes, box, reds[i], greens[i], blues[i]) <= limit) {
+                if (indices != null) {
+                    indices[position + count] = i;
+                }
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Get the hue, saturation and value bucket of an RGB value, using integer arithmetic only
+     *
+     * @param r {@link int}
+     * @param g {@link int}
+     * @param b {@link int}
+     * @return {@link int} 0 to {@link #BUCKETS} - 1
+     */
+    public static int getBucket(int r, int g, int b) {
+        int max = Math.max(r, Math.max(g, b));
+        int min = Math.min(r, Math.min(g, b));
+        int delta = max - min;
+        int hue = 0;
+        if (delta != 0) {
+            if (max == r) {
+                hue = (g - b) * HUE_SECTOR / delta;
+                if (hue < 0) {
+                    hue += HUE_RANGE;
+                }
+            } else if (max == g) {
+                hue = 2 * HUE_SECTOR + (b - r) * HUE_SECTOR / delta;
+            } else {
+                hue = 4 * HUE_SECTOR + (r - g) * HUE_SECTOR / delta;
+            }
+        }
+        int hueBucket = hue * HUE_BUCKETS / HUE_RANGE;
+        int saturationBucket = (max == 0) ? 0 : Math.min(SATURATION_BUCKETS - 1, delta * SATURATION_BUCKETS / max);
+        int valueBucket = max * VALUE_BUCKETS / 256;
+        return (hueBucket * SATURATION_BUCKETS + saturationBucket) * VALUE_BUCKETS + valueBucket;
+    }
+
+    /**
+     * Compute a box holding every RGB value {@link #getBucket(int, int, int)} puts into a bucket,
+     * stored as min and max red, green and blue. Within one hue sector every channel only grows
+     * or only shrinks along each of hue, saturation and value, so the corners of the bucket in
+     * HSV give the extremes of the box.
+     */
+    private static void getBucketBox(int bucket, int[] boxes, int box) {
+        int valueBucket = bucket % VALUE_BUCKETS;
+        int saturationBucket = (bucket / VALUE_BUCKETS) % SATURATION_BUCKETS;
+        int hueBucket = bucket / (VALUE_BUCKETS * SATURATION_BUCKETS);
+        double[] hues = {(double) hueBucket / HUE_BUCKETS, (double) (hueBucket + 1) / HUE_BUCKETS};
+        double[] saturations = {(double) saturationBucket / SATURATION_BUCKETS,
+                (double) (saturationBucket + 1) / SATURATION_BUCKETS};
+        // Smallest and largest max channel that fall into the value bucket
+        double[] values = {((valueBucket * 256 + VALUE_BUCKETS - 1) / VALUE_BUCKETS) / 255.0,
+                (((valueBucket + 1) * 256 + VALUE_BUCKETS - 1) / VALUE_BUCKETS - 1) / 255.0};
+
+        double[] low = {1, 1, 1};
+        double[] high = {0, 0, 0};
+        double[] rgb = new double[3];
+        for (int h = 0; h < 2; h++) {
+            for (double s : saturations) {
+                for (double v : values) {
+                    // The upper hue corner is evaluated in this bucket's sector, not the next one
+                    hsvToRgb(hues[h], s, v, h == 1, rgb);
+                    for (int c = 0; c < 3; c++) {
+                        low[c] = Math.min(low[c], rgb[c]);
+                        high[c] = Math.max(high[c], rgb[c]);
+                    }
+                }
+            }
+        }
+        for (int c = 0; c < 3; c++) {
+            boxes[box + 2 * c] = Math.max(0, (int) Math.floor(low[c] * 255) - BOX_MARGIN);
+            boxes[box + 2 * c + 1] = Math.min(255, (int) Math.ceil(high[c] * 255) + BOX_MARGIN);
+        }
+    }
+
+    /**
+     * Convert HSV, each 0 to 1, to RGB, each 0 to 1. A hue on a sector border is taken as the
+     * end of the previous sector if sectorEnd is set, both give the same color.
+     */
+    private static void hsvToRgb(double h, double s, double v, boolean sectorEnd, double[] rgb) {
+        double sector = h * 6;
+        int i = (int) sector;
+        if (sectorEnd && i == sector) {
+            i--;
+        }
+        double f = sector - i;
+        double p = v * (1 - s);
+        double q = v * (1 - s * f);
+        double t = v * (1 - s * (1 - f));
+        switch (i % 6) {
+            case 0:
+                rgb[0] = v;
+                rgb[1] = t;
+                rgb[2] = p;
+                break;
+            case 1:
+                rgb[0] = q;
+                rgb[1] = v;
+                rgb[2] = p;
+                break;
+            case 2:
+                rgb[0] = p;
+                rgb[1] = v;
+                rgb[2] = t;
+                break;
+            case 3:
+                rgb[0] = p;
+                rgb[1] = q;
+                rgb[2] = v;
+                break;
+            case 4:
+                rgb[0] = t;
+                rgb[1] = p;
+                rgb[2] = v;
+                break;
+            default:
+                rgb[0] = v;
+                rgb[1] = p;
+                rgb[2] = q;
+                break;
+        }
+    }
+
+    /**
+     * Get the squared distance from a color to the nearest point of a box
+     */
+    private static int getNearestDistance(int[] boxes, int box, int r, int g, int b) {
+        int rdiff = Math.max(0, Math.max(boxes[box] - r, r - boxes[box + 1]));
+        int gdiff = Math.max(0, Math.max(boxes[box + 2] - g, g - boxes[box + 3]));
+        int bdiff = Math.max(0, Math.max(boxes[box + 4] - b, b - boxes[box + 5]));
+        return rdiff * rdiff + gdiff * gdiff + bdiff * bdiff;
+    }
+
+    /**
+     * Get the squared distance from a color to the farthest corner of a box
+     */
+    private static int getFarthestDistance(int[] boxes, int box, int r, int g, int b) {
+        int rdiff = Math.max(r - boxes[box], boxes[box + 1] - r);
+        int gdiff = Math.max(g - boxes[box + 2], boxes[box + 3] - g);
+        int bdiff = Math.max(b - boxes[box + 4], boxes[box + 5] - b);
+        return rdiff * rdiff + gdiff * gdiff + bdiff * bdiff;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int findNearest(int r, int g, int b) {
+        final int[] indices = mIndices;
+        final int[] reds = mReds;
+        final int[] greens = mGreens;
+        final int[] blues = mBlues;
+
+        int bucket = getBucket(r, g, b);
+        int end = mBucketStarts[bucket + 1];
+        int closest = -1;
+        int minDistance = Integer.MAX_VALUE;
+        for (int j = mBucketStarts[bucket]; j < end; j++) {
+            int rdiff = r - reds[j];
+            int gdiff = g - greens[j];
+            int bdiff = b - blues[j];
+            int distance = rdiff * rdiff + gdiff * gdiff + bdiff * bdiff;
+            if (distance < minDistance) {
+                minDistance = distance;
+                closest = indices[j];
+            }
+        }
+        return closest;
+    }
+
+    /**
+     * Get the family of the palette color closest to the RGB values passed in the argument, the
+     * shade id of {@link #findNearest(int, int, int)}. Only searches the bucket when it holds
+     * colors of more than one family.
+     *
+     * @param r {@link int}
+     * @param g {@link int}
+     * @param b {@link int}
+     * @return {@link int} shade id, see {@link ColorPalette#getShadeName(int)}, -1 if the palette
+     * is empty
+     */
+    public int findFamily(int r, int g, int b) {
+        int family = mBucketFamilies[getBucket(r, g, b)];
+        if (family != MIXED) {
+            return family;
+        }
+        int index = findNearest(r, g, b);
+        return (index >= 0) ? mPalette.getShadeId(index) : -1;
+    }
+
+    /**
+     * Get the family every color searched for a bucket belongs to
+     *
+     * @param bucket {@link int} see {@link #getBucket(int, int, int)}
+     * @return {@link int} shade id, or {@link #MIXED} if the bucket holds several families or
+     * none
+     */
+    public int getBucketFamily(int bucket) {
+        return mBucketFamilies[bucket];
+    }
+
+    /**
+     * Get the number of palette colors searched for a bucket
+     *
+     * @param bucket {@link int} see {@link #getBucket(int, int, int)}
+     * @return {@link int}
+     */
+    public int getCandidateCount(int bucket) {
+        return mBucketStarts[bucket + 1] - mBucketStarts[bucket];
+    }
+
+}
@@ -0,0 +1,291 @@
+/*
+ * Copyright 2014 Martin Brabham
+ * Copyright 2014 Daniel Velazco
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+package com.holoyolostudios.colorvision.colorlib.colors;
+
+/**
+ * ColorKdTree
+ * <p/>
+ * Static k-d tree over the RGB values of a {@link ColorPalette}. The tree is stored implicitly
+ * in flat arrays: the node for the range [lo, hi) sits at (lo + hi) / 2, with the lower half of
+ * the range on its left and the upper half on its right. Lookups use branch-and-bound pruning
+ * and return exactly the same index as the brute-force scan, including its tie breaking.
+ * <p/>
+ *
+ * @author Daniel Velazco
+ * @author Martin Brabham
+ */
+public class ColorKdTree implements ColorMatcher {
+
+    // Constants
+    private static final int AXIS_RED = 0;
+    private static final int AXIS_GREEN = 1;
+    private static final int AXIS_BLUE = 2;
+
+    // Members
+    private final int mSize;
+    private final int[] mIndices;
+    private final int[] mReds;
+    private final int[] mGreens;
+    private final int[] mBlues;
+    private final byte[] mAxes;
+
+    /**
+     * Constructor
+     *
+     * @param palette {@link ColorPalette}
+     */
+    public ColorKdTree(ColorPalette palette) {
+        mSize = palette.size();
+        mIndices = new int[mSize];
+        mReds = new int[mSize];
+        mGreens = new int[mSize];
+        mBlues = new int[mSize];
+        mAxes = new byte[mSize];
+        for (int i = 0; i < mSize; i++) {
+            mIndices[i] = i;
+            mReds[i] = palette.getRed(i);
+            mGreens[i] = palette.getGreen(i);
+            mBlues[i] = palette.getBlue(i);
+        }
+        build(0, mSize);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int findNearest(int r, int g, int b) {
+        if (mSize == 0) {
+            return -1;
+        }
+        long best = search(0, mSize, r, g, b, Long.MAX_VALUE);
+        return (int) (best & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Find the k palette colors closest to the RGB values passed in the argument, see
+     * {@link ColorPalette#findNearest(int, int, int, int, int[], int[])}. Subtrees are pruned
+     * against the k-th best candidate once k have been found.
+     *
+     * @param r         {@link int}
+     * @param g         {@link int}
+     * @param b         {@link int}
+     * @param k         {@link int} number of colors wanted
+     * @param indices   {@link int} array of at least k entries receiving the palette indices
+     * @param distances {@link int} array of at least k entries receiving the squared RGB distances
+     * @return {@link int} number of colors found, k unless the palette is smaller
+     */
+    public int findNearest(int r, int g, int b, int k, int[] indices, int[] distances) {
+        if (NearestColorHeap.checkCapacity(k, indices, distances) == 0) {
+            return 0;
+        }
+        int found = search(0, mSize, r, g, b, k, indices, distances, 0);
+        NearestColorHeap.sort(indices, distances, found);
+        return found;
+    }
+
+    /**
+     * Recursively offer the range [lo, hi) to the heap of found candidates
+     */
+    private int search(int lo, int hi, int r, int g, int b, int k, int[] indices, int[] distances, int found) {
+        if (lo >= hi) {
+            return found;
+        }
+        int mid = (lo + hi) >>> 1;
+        int rdiff = r - mReds[mid];
+        int gdiff = g - mGreens[mid];
+        int bdiff = b - mBlues[mid];
+        found = NearestColorHeap.offer(indices, distances, found, k, mIndices[mid],
+                rdiff * rdiff + gdiff * gdiff + bdiff * bdiff);
+
+        int diff;
+        switch (mAxes[mid]) {
+            case AXIS_RED:
+                diff = rdiff;
+                break;
+            case AXIS_GREEN:
+                diff = gdiff;
+                break;
+            default:
+                diff = bdiff;
+                break;
+        }
+
+        // Same order and bound as the single nearest search, against the worst candidate kept
+        long planeDistance = (long) diff * diff;
+        if (diff < 0) {
+            found = search(lo, mid, r, g, b, k, indices, distances, found);
+            if (NearestColorHeap.accepts(distances, found, k, planeDistance)) {
+                found = search(mid + 1, hi, r, g, b, k, indices, distances, found);
+            }
+        } else {
+            found = search(mid + 1, hi, r, g, b, k, indices, distances, found);
+            if (NearestColorHeap.accepts(distances, found, k, planeDistance)) {
+                found = search(lo, mid, r, g, b, k, indices, distances, found);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Recursively search the range [lo, hi) for a candidate better than the one passed in.
+     * Candidates are packed as (distance << 32 | index) so that comparing two packed values
+     * orders by distance first and index second, exactly like the brute-force scan.
+     */
+    private long search(int lo, int hi, int r, int g, int b, long best) {
+        if (lo >= hi) {
+            return best;
+        }
+        int mid = (lo + hi) >>> 1;
+        int rdiff = r - mReds[mid];
+        int gdiff = g - mGreens[mid];
+        int bdiff = b - mBlues[mid];
+        long candidate = ((long) (rdiff * rdiff + gdiff * gdiff + bdiff * bdiff) << 32) | mIndices[mid];
+        if (candidate < best) {
+            best = candidate;
+        }
+
+        int diff;
+        switch (mAxes[mid]) {
+            case AXIS_RED:
+                diff = rdiff;
+                break;
+            case AXIS_GREEN:
+                diff = gdiff;
+                break;
+            default:
+                diff = bdiff;
+                break;
+        }
+
+        // Visit the near side first, then the far side only if it can still hold
+        // an equally close or closer color
+        long planeDistance = (long) diff * diff;
+        if (diff < 0) {
+            best = search(lo, mid, r, g, b, best);
+            if (planeDistance <= (best >>> 32)) {
+                best = search(mid + 1, hi, r, g, b, best);
+            }
+        } else {
+            best = search(mid + 1, hi, r, g, b, best);
+            if (planeDistance <= (best >>> 32)) {
+                best = search(lo, mid, r, g, b, best);
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Build the subtree for the range [lo, hi), splitting on the axis with the largest spread.
+     */
+    private void build(int lo, int hi) {
+        if (hi - lo <= 0) {
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        int axis = widestAxis(lo, hi);
+        select(lo, hi - 1, mid, axis);
+        mAxes[mid] = (byte) axis;
+        build(lo, mid);
+        build(mid + 1, hi);
+    }
+
+    /**
+     * Find the axis with the largest value range inside [lo, hi)
+     */
+    private int widestAxis(int lo, int hi) {
+        int minR = 255, maxR = 0, minG = 255, maxG = 0, minB = 255, maxB = 0;
+        for (int i = lo; i < hi; i++) {
+            minR = Math.min(minR, mReds[i]);
+            maxR = Math.max(maxR, mReds[i]);
+            minG = Math.min(minG, mGreens[i]);
+            maxG = Math.max(maxG, mGreens[i]);
+            minB = Math.min(minB, mBlues[i]);
+            maxB = Math.max(maxB, mBlues[i]);
+        }
+        int spreadR = maxR - minR;
+        int spreadG = maxG - minG;
+        int spreadB = maxB - minB;
+        if (spreadR >= spreadG && spreadR >= spreadB) {
+            return AXIS_RED;
+        } else if (spreadG >= spreadB) {
+            return AXIS_GREEN;
+        } else {
+            return AXIS_BLUE;
+        }
+    }
+
+    /**
+     * Quickselect on the inclusive range [left, right] so that position k holds the median on
+     * the given axis, everything before it is less than or equal and everything after it is
+     * greater than or equal.
+     */
+    private void select(int left, int right, int k, int axis) {
+        while (right > left) {
+            int pivot = key(axis, (left + right) >>> 1);
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (key(axis, i) < pivot) {
+                    i++;
+                }
+                while (key(axis, j) > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(i, j);
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                right = j;
+            } else if (k >= i) {
+                left = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private int key(int axis, int position) {
+        switch (axis) {
+            case AXIS_RED:
+                return mReds[position];
+            case AXIS_GREEN:
+                return mGreens[position];
+            default:
+                return mBlues[position];
+        }
+    }
+
+    private void swap(int i, int j) {
+        int t = mIndices[i];
+        mIndices[i] = mIndices[j];
+        mIndices[j] = t;
+        t = mReds[i];
+        mReds[i] = mReds[j];
+        mReds[j] = t;
+        t = mGreens[i];
+        mGreens[i] = mGreens[j];
+        mGreens[j] = t;
+        t = mBlues[i];
+        mBlues[i] = mBlues[j];
+        mBlues[j] = t;
+    }
+
+}
@@ -0,0 +1,413 @@
+/*
+ * Copyright 2014 Martin Brabham
+ * Copyright 2014 Daniel Velazco
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+package com.holoyolostudios.colorvision.colorlib.colors;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * ColorLabMatcher
+ * <p/>
+ * Matches colors by perceptual distance in CIELAB (D65) instead of RGB distance, which gives
+ * better names in dark and saturated regions where equal RGB steps look very different.
+ * Either CIE76, the euclidean Lab distance, or CIEDE2000 can be used.
+ * <p/>
+ * The Lab value of every palette color is computed once, up front, and the colors are sorted
+ * by lightness. A query is converted through cached tables for the sRGB transfer curve and
+ * the Lab cube root, then the search walks outward from the query's lightness. Both metrics
+ * are at least the lightness difference scaled by its weight, for CIEDE2000 |dL| / S_L where
+ * S_L never exceeds {@link #MAX_LIGHTNESS_WEIGHT}, so a candidate whose lightness bound is
+ * already worse than the best match is skipped without computing the full metric, and the walk
+ * stops once the bound exceeds the best match on both sides. The result is exactly the color a
+ * full scan with the same metric would pick, equally close colors going to the lowest index.
+ * Candidates that pass the lightness bound are checked against a bound of CIEDE2000 that needs
+ * no trigonometry before the full metric is computed.
+ * <p/>
+ * Unlike the RGB matchers this does not return the same index as
+ * {@link ColorPalette#findNearest(int, int, int)}, and the lookup table cannot be used in front
+ * of it because perceptual regions are not convex in RGB.
+ * <p/>
+ *
+ * @author Daniel Velazco
+ * @author Martin Brabham
+ */
+public class ColorLabMatcher implements ColorMatcher {
+
+    // Metrics
+    public static final int METRIC_CIE76 = 0;
+    public static final int METRIC_CIEDE2000 = 1;
+
+    // Largest CIEDE2000 lightness weight S_L over lightness 0 to 100, reached at both ends
+    public static final double MAX_LIGHTNESS_WEIGHT = 1 + 0.015 * 2500 / Math.sqrt(20 + 2500);
+
+    // D65 reference white
+    private static final double WHITE_X = 0.95047;
+    private static final double WHITE_Y = 1.0;
+    private static final double WHITE_Z = 1.08883;
+
+    // Cube root table covering 0 to 1, every ratio to the reference white sRGB can produce
+    private static final int CUBE_ROOT_STEPS = 1024;
+    private static final double[] CUBE_ROOT = new double[CUBE_ROOT_STEPS + 2];
+
+    // sRGB transfer curve undone for every 8 bit value
+    private static final double[] LINEAR = new double[256];
+
+    private static final double POW_25_7 = Math.pow(25, 7);
+
+    // Bounds of the CIEDE2000 terms that need trigonometry: the hue weighting T stays below
+    // 1.5725 over all hue angles and the rotation term turns by at most 2 * 30 degrees
+    private static final double MAX_HUE_WEIGHTING = 1.58;
+    private static final double MAX_ROTATION_SINE = Math.sqrt(3) / 2;
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            double c = i / 255.0;
+            LINEAR[i] = (c <= 0.04045) ? c / 12.92 : Math.pow((c + 0.055) / 1.055, 2.4);
+        }
+        for (int i = 0; i < CUBE_ROOT.length; i++) {
+            CUBE_ROOT[i] = labCurve((double) i / CUBE_ROOT_STEPS);
+        }
+    }
+
+    // Members
+    private final int mMetric;
+    private final int mSize;
+    private final int[] mIndices;
+    private final double[] mL;
+    private final double[] mA;
+    private final double[] mB;
+    private final double[] mC;
+
+    /**
+     * Constructor
+     *
+     * @param palette {@link ColorPalette}
+     * @param metric  {@link #METRIC_CIE76} or {@link #METRIC_CIEDE2000}
+     */
+    public ColorLabMatcher(ColorPalette palette, int metric) {
+        if (metric != METRIC_CIE76 && metric != METRIC_CIEDE2000) {
+            throw new IllegalArgumentException("Unknown metric: " + metric);
+        }
+        mMetric = metric;
+        mSize = palette.size();
+
+        // Palette colors are converted exactly, the tables are only used for queries
+        double[] lab = new double[3];
+        final double[] l = new double[mSize];
+        double[] a = new double[mSize];
+        double[] b = new double[mSize];
+        Integer[] order = new Integer[mSize];
+        for (int i = 0; i < mSize; i++) {
+            toLabExact(palette.getRed(i), palette.getGreen(i), palette.getBlue(i), lab);
+            l[i] = lab[0];
+            a[i] = lab[1];
+            b[i] = lab[2];
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer lhs, Integer rhs) {
+                return Double.compare(l[lhs], l[rhs]);
+            }
+        });
+
+        mIndices = new int[mSize];
+        mL = new double[mSize];
+        mA = new double[mSize];
+        mB = new double[mSize];
+        mC = new double[mSize];
+        for (int i = 0; i < mSize; i++) {
+            int index = order[i];
+            mIndices[i] = index;
+            mL[i] = l[index];
+            mA[i] = a[index];
+            mB[i] = b[index];
+            mC[i] = Math.sqrt(a[index] * a[index] + b[index] * b[index]);
+        }
+    }
+
+    /**
+     * Get the metric used for matching
+     *
+     * @return {@link int} {@link #METRIC_CIE76} or {@link #METRIC_CIEDE2000}
+     */
+    public int getMetric() {
+        return mMetric;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int findNearest(int r, int g, int b) {
+        if (mSize == 0) {
+            return -1;
+        }
+
+        // Query to Lab through the tables
+        double lr = LINEAR[r];
+        double lg = LINEAR[g];
+        double lb = LINEAR[b];
+        double fx = cubeRoot((0.4124564 * lr + 0.3575761 * lg + 0.1804375 * lb) / WHITE_X);
+        double fy = cubeRoot((0.2126729 * lr + 0.7151522 * lg + 0.0721750 * lb) / WHITE_Y);
+        double fz = cubeRoot((0.0193339 * lr + 0.1191920 * lg + 0.9503041 * lb) / WHITE_Z);
+        double l = 116 * fy - 16;
+        double a = 500 * (fx - fy);
+        double bb = 200 * (fy - fz);
+        double c = Math.sqrt(a * a + bb * bb);
+
+        // First position with a lightness at or above the query's
+        int lo = 0;
+        int hi = mSize;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (mL[mid] < l) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+
+        int position = search(l, a, bb, c, lo, false, Double.POSITIVE_INFINITY, -1);
+        if (mMetric == METRIC_CIEDE2000) {
+            // The CIE76 match is usually close in CIEDE2000 as well, starting from it lets the
+            // bound skip most colors
+            double best = deltaE2000Squared(l, a, bb, c, mL[position], mA[position], mB[position], mC[position],
+                    Double.POSITIVE_INFINITY);
+            position = search(l, a, bb, c, lo, true, best, position);
+        }
+        return mIndices[position];
+    }
+
+    /**
+     * Walk outward from the start position, always taking the side with the smaller lightness
+     * difference, and return the position of the best color. Distances are compared squared.
+     */
+    private int search(double l, double a, double b, double c, int start, boolean ciede2000,
+                       double best, int bestPosition) {
+        int below = start - 1;
+        int above = start;
+        double scale = ciede2000 ? 1 / (MAX_LIGHTNESS_WEIGHT * MAX_LIGHTNESS_WEIGHT) : 1;
+        while (below >= 0 || above < mSize) {
+            int position;
+            double dl;
+            if (above >= mSize || (below >= 0 && l - mL[below] < mL[above] - l)) {
+                position = below--;
+                dl = l - mL[position];
+            } else {
+                position = above++;
+                dl = mL[position] - l;
+            }
+
+            // Every remaining color on this side is at least as far in lightness. Ties must
+            // still be looked at for their index.
+            if (dl * dl * scale > best) {
+                if (position < start) {
+                    below = -1;
+                } else {
+                    above = mSize;
+                }
+                continue;
+            }
+
+            double distance;
+            if (ciede2000) {
+                double lBar = (l + mL[position]) / 2 - 50;
+                double sl = 1 + 0.015 * lBar * lBar / Math.sqrt(20 + lBar * lBar);
+                if (dl * dl / (sl * sl) > best || position == bestPosition) {
+                    continue;
+                }
+                distance = deltaE2000Squared(l, a, b, c, mL[position], mA[position], mB[position], mC[position],
+                        best);
+            } else {
+                double da = a - mA[position];
+                double db = b - mB[position];
+                distance = dl * dl + da * da + db * db;
+            }
+            if (distance < best || (distance == best && mIndices[position] < mIndices[bestPosition])) {
+                best = distance;
+                bestPosition = position;
+            }
+        }
+        return bestPosition;
+    }
+
+    /**
+     * Convert 8 bit sRGB to CIELAB with the cached tables used for queries
+     *
+     * @param r   {@link int}
+     * @param g   {@link int}
+     * @param b   {@link int}
+     * @param out {@link double} array receiving L, a and b
+     */
+    public static void toLab(int r, int g, int b, double[] out) {
+        double lr = LINEAR[r];
+        double lg = LINEAR[g];
+        double lb = LINEAR[b];
+        double fx = cubeRoot((0.4124564 * lr + 0.3575761 * lg + 0.1804375 * lb) / WHITE_X);
+        double fy = cubeRoot((0.2126729 * lr + 0.7151522 * lg + 0.0721750 * lb) / WHITE_Y);
+        double fz = cubeRoot((0.0193339 * lr + 0.1191920 * lg + 0.9503041 * lb) / WHITE_Z);
+        out[0] = 116 * fy - 16;
+        out[1] = 500 * (fx - fy);
+        out[2] = 200 * (fy - fz);
+    }
+
+    /**
+     * Convert 8 bit sRGB to CIELAB without tables
+     *
+     * @param r   {@link int}
+     * @param g   {@link int}
+     * @param b   {@link int}
+     * @param out {@link double} array receiving L, a and b
+     */
+    public static void toLabExact(int r, int g, int b, double[] out) {
+        double lr = LINEAR[r];
+        double lg = LINEAR[g];
+        double lb = LINEAR[b];
+        double fx = labCurve((0.4124564 * lr + 0.3575761 * lg + 0.1804375 * lb) / WHITE_X);
+        double fy = labCurve((0.2126729 * lr + 0.7151522 * lg + 0.0721750 * lb) / WHITE_Y);
+        double fz = labCurve((0.0193339 * lr + 0.1191920 * lg + 0.9503041 * lb) / WHITE_Z);
+        out[0] = 116 * fy - 16;
+        out[1] = 500 * (fx - fy);
+        out[2] = 200 * (fy - fz);
+    }
+
+    /**
+     * Get the CIEDE2000 color difference of two Lab colors
+     *
+     * @return {@link double}
+     */
+    public static double deltaE2000(double l1, double a1, double b1, double l2, double a2, double b2) {
+        return Math.sqrt(deltaE2000Squared(l1, a1, b1, Math.sqrt(a1 * a1 + b1 * b1),
+                l2, a2, b2, Math.sqrt(a2 * a2 + b2 * b2), Double.POSITIVE_INFINITY));
+    }
+
+    /**
+     * Squared CIEDE2000 difference with the chroma of both colors passed in, following Sharma,
+     * Wu and Dalal's formulation. Returns a lower bound above the limit instead once the terms
+     * that need no trigonometry prove the difference exceeds it.
+     */
+    private static double deltaE2000Squared(double l1, double a1, double b1, double c1,
+                                            double l2, double a2, double b2, double c2, double limit) {
+        double cBar = (c1 + c2) / 2;
+        double cBar7 = pow7(cBar);
+        double g = 0.5 * (1 - Math.sqrt(cBar7 / (cBar7 + POW_25_7)));
+        double a1p = a1 * (1 + g);
+        double a2p = a2 * (1 + g);
+        double c1p = Math.sqrt(a1p * a1p + b1 * b1);
+        double c2p = Math.sqrt(a2p * a2p + b2 * b2);
+
+        double dLp = l2 - l1;
+        double dCp = c2p - c1p;
+
+        // Bound the result from below without trigonometry. The squared hue difference is
+        // 2 (C1' C2' - a1' a2' - b1 b2), its weight is smallest at the largest T, and the rotation
+        // term takes at most |R_T| / 2 of the chroma and hue terms.
+        double lBarp = (l1 + l2) / 2;
+        double cBarp = (c1p + c2p) / 2;
+        double cBarp7 = pow7(cBarp);
+        double rc = 2 * Math.sqrt(cBarp7 / (cBarp7 + POW_25_7));
+        double lBar50 = (lBarp - 50) * (lBarp - 50);
+        double sl = 1 + 0.015 * lBar50 / Math.sqrt(20 + lBar50);
+        double sc = 1 + 0.045 * cBarp;
+        double lTerm = dLp / sl;
+        double cTerm = dCp / sc;
+        double shMax = 1 + 0.015 * cBarp * MAX_HUE_WEIGHTING;
+        double dHp2 = Math.max(0, 2 * (c1p * c2p - a1p * a2p - b1 * b2));
+        double bound = lTerm * lTerm
+                + (1 - MAX_ROTATION_SINE * rc / 2) * (cTerm * cTerm + dHp2 / (shMax * shMax));
+        if (bound > limit) {
+            return bound;
+        }
+
+        double h1p = hueAngle(a1p, b1);
+        double h2p = hueAngle(a2p, b2);
+        double dhp = 0;
+        boolean achromatic = c1p * c2p == 0;
+        if (!achromatic) {
+            dhp = h2p - h1p;
+            if (dhp > 180) {
+                dhp -= 360;
+            } else if (dhp < -180) {
+                dhp += 360;
+            }
+        }
+        double dHp = 2 * Math.sqrt(c1p * c2p) * Math.sin(Math.toRadians(dhp / 2));
+
+        double hBarp = h1p + h2p;
+        if (!achromatic) {
+            if (Math.abs(h1p - h2p) <= 180) {
+                hBarp /= 2;
+            } else if (hBarp < 360) {
+                hBarp = (hBarp + 360) / 2;
+            } else {
+                hBarp = (hBarp - 360) / 2;
+            }
+        }
+
+        double t = 1 - 0.17 * Math.cos(Math.toRadians(hBarp - 30))
+                + 0.24 * Math.cos(Math.toRadians(2 * hBarp))
+                + 0.32 * Math.cos(Math.toRadians(3 * hBarp + 6))
+                - 0.20 * Math.cos(Math.toRadians(4 * hBarp - 63));
+        double dTheta = 30 * Math.exp(-((hBarp - 275) / 25) * ((hBarp - 275) / 25));
+        double sh = 1 + 0.015 * cBarp * t;
+        double rt = -Math.sin(Math.toRadians(2 * dTheta)) * rc;
+        double hTerm = dHp / sh;
+        return lTerm * lTerm + cTerm * cTerm + hTerm * hTerm + rt * cTerm * hTerm;
+    }
+
+    /**
+     * Hue angle in degrees, 0 to 360
+     */
+    private static double hueAngle(double a, double b) {
+        if (a == 0 && b == 0) {
+            return 0;
+        }
+        double h = Math.toDegrees(Math.atan2(b, a));
+        return (h < 0) ? h + 360 : h;
+    }
+
+    private static double pow7(double x) {
+        double x2 = x * x;
+        return x2 * x2 * x2 * x;
+    }
+
+    /**
+     * Lab companding curve, the cube root with a linear segment near black
+     */
+    private static double labCurve(double t) {
+        final double epsilon = 216.0 / 24389.0;
+        return (t > epsilon) ? Math.cbrt(t) : (24389.0 / 27.0 * t + 16) / 116;
+    }
+
+    /**
+     * Lab companding curve from the table, interpolating linearly between steps
+     */
+    private static double cubeRoot(double t) {
+        double position = t * CUBE_ROOT_STEPS;
+        if (position <= 0) {
+            return CUBE_ROOT[0];
+        }
+        int step = (int) position;
+        if (step >= CUBE_ROOT_STEPS) {
+            return CUBE_ROOT[CUBE_ROOT_STEPS];
+        }
+        double fraction = position - step;
+        return CUBE_ROOT[step] + (CUBE_ROOT[step + 1] - CUBE_ROOT[step]) * fraction;
+    }
+
+}
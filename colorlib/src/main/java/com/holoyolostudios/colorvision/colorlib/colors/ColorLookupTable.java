@@ -0,0 +1,205 @@
+/*
+ * Copyright 2014 Martin Brabham
+ * Copyright 2014 Daniel Velazco
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+package com.holoyolostudios.colorvision.colorlib.colors;
+
+import java.util.Arrays;
+
+/**
+ * ColorLookupTable
+ * <p/>
+ * Quantized RGB grid holding the closest palette index for every cell, so a lookup is a single
+ * array read. A cell is resolved the first time it is hit (or up front with {@link #precompute()})
+ * by matching its eight corners: palette regions are convex, so if every corner has the same
+ * closest color, every RGB value inside the cell has it as well. Cells whose corners disagree
+ * are flagged as boundary cells and always fall back to the exact matcher, so results never
+ * differ from the brute-force scan. A compiled palette may carry a fully resolved table.
+ * <p/>
+ *
+ * @author Daniel Velazco
+ * @author Martin Brabham
+ */
+public class ColorLookupTable implements ColorMatcher {
+
+    // Constants
+    public static final int DEFAULT_RED_BITS = 5;
+    public static final int DEFAULT_GREEN_BITS = 6;
+    public static final int DEFAULT_BLUE_BITS = 5;
+    private static final short CELL_UNRESOLVED = -2;
+    private static final short CELL_BOUNDARY = -1;
+
+    // Members
+    private final ColorMatcher mFallback;
+    private final int mRedShift;
+    private final int mGreenShift;
+    private final int mBlueShift;
+    private final int mGreenBits;
+    private final int mBlueBits;
+    private final short[] mCells;
+
+    /**
+     * Constructor using a 5-6-5 bit grid
+     *
+     * @param palette  {@link ColorPalette}
+     * @param fallback {@link ColorMatcher} exact matcher used for boundary cells
+     */
+    public ColorLookupTable(ColorPalette palette, ColorMatcher fallback) {
+        this(palette, fallback, DEFAULT_RED_BITS, DEFAULT_GREEN_BITS, DEFAULT_BLUE_BITS);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param palette   {@link ColorPalette}
+     * @param fallback  {@link ColorMatcher} exact matcher used for boundary cells
+     * @param redBits   {@link int} number of bits of red used to index the grid
+     * @param greenBits {@link int} number of bits of green used to index the grid
+     * @param blueBits  {@link int} number of bits of blue used to index the grid
+     */
+    public ColorLookupTable(ColorPalette palette, ColorMatcher fallback, int redBits, int greenBits, int blueBits) {
+        if (palette.size() > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Palette is too large for a lookup table: " + palette.size());
+        }
+        if (redBits < 1 || redBits > 8 || greenBits < 1 || greenBits > 8 || blueBits < 1 || blueBits > 8) {
+            throw new IllegalArgumentException("Bits per channel must be between 1 and 8.");
+        }
+        mFallback = fallback;
+        mRedShift = 8 - redBits;
+        mGreenShift = 8 - greenBits;
+        mBlueShift = 8 - blueBits;
+        mGreenBits = greenBits;
+        mBlueBits = blueBits;
+        mCells = new short[1 << (redBits + greenBits + blueBits)];
+        if (palette.hasLookupTable(redBits, greenBits, blueBits)) {
+            palette.readLookupTable(mCells);
+        } else {
+            Arrays.fill(mCells, CELL_UNRESOLVED);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int findNearest(int r, int g, int b) {
+        int cell = (((r >> mRedShift) << mGreenBits | (g >> mGreenShift)) << mBlueBits) | (b >> mBlueShift);
+        int index = mCells[cell];
+        if (index == CELL_UNRESOLVED) {
+            index = resolve(cell, r >> mRedShift, g >> mGreenShift, b >> mBlueShift);
+        }
+        if (index == CELL_BOUNDARY) {
+            return mFallback.findNearest(r, g, b);
+        }
+        return index;
+    }
+
+    /**
+     * Resolve every cell of the grid now instead of on first use
+     */
+    public void precompute() {
+        int redCells = 1 << (8 - mRedShift);
+        int greenCells = 1 << mGreenBits;
+        int blueCells = 1 << mBlueBits;
+        int cell = 0;
+        for (int qr = 0; qr < redCells; qr++) {
+            for (int qg = 0; qg < greenCells; qg++) {
+                for (int qb = 0; qb < blueCells; qb++) {
+                    if (mCells[cell] == CELL_UNRESOLVED) {
+                        resolve(cell, qr, qg, qb);
+                    }
+                    cell++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Resolve every cell and copy the grid into the given array, used to store the table
+     * alongside a compiled palette.
+     *
+     * @param cells {@link short} array with one entry per cell
+     */
+    public void exportCells(short[] cells) {
+        precompute();
+        System.arraycopy(mCells, 0, cells, 0, mCells.length);
+    }
+
+    /**
+     * Get the number of cells in the grid
+     *
+     * @return {@link int}
+     */
+    public int getCellCount() {
+        return mCells.length;
+    }
+
+    /**
+     * Get the number of cells that have been resolved to a single palette index
+     *
+     * @return {@link int}
+     */
+    public int getResolvedCellCount() {
+        int count = 0;
+        for (short value : mCells) {
+            if (value >= 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Get the number of cells that have been flagged as boundary cells
+     *
+     * @return {@link int}
+     */
+    public int getBoundaryCellCount() {
+        int count = 0;
+        for (short value : mCells) {
+            if (value == CELL_BOUNDARY) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Match the corners of a cell and store either the shared index or the boundary flag.
+     * Concurrent resolution of the same cell is harmless since every thread stores the same value.
+     */
+    private int resolve(int cell, int qr, int qg, int qb) {
+        int r0 = qr << mRedShift;
+        int r1 = r0 + (1 << mRedShift) - 1;
+        int g0 = qg << mGreenShift;
+        int g1 = g0 + (1 << mGreenShift) - 1;
+        int b0 = qb << mBlueShift;
+        int b1 = b0 + (1 << mBlueShift) - 1;
+
+        int index = mFallback.findNearest(r0, g0, b0);
+        if (mFallback.findNearest(r1, g1, b1) != index
+                || mFallback.findNearest(r1, g0, b0) != index
+                || mFallback.findNearest(r0, g1, b0) != index
+                || mFallback.findNearest(r0, g0, b1) != index
+                || mFallback.findNearest(r1, g1, b0) != index
+                || mFallback.findNearest(r1, g0, b1) != index
+                || mFallback.findNearest(r0, g1, b1) != index) {
+            index = CELL_BOUNDARY;
+        }
+        mCells[cell] = (short) index;
+        return index;
+    }
+
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2014 Martin Brabham
+ * Copyright 2014 Daniel Velazco
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+package com.holoyolostudios.colorvision.colorlib.colors;
+
+/**
+ * ColorMatcher
+ * <p/>
+ * Strategy for finding the palette color closest to an RGB value
+ * <p/>
+ *
+ * @author Daniel Velazco
+ * @author Martin Brabham
+ */
+public interface ColorMatcher {
+
+    /**
+     * Find the index of the palette color closest to the RGB values passed in the argument.
+     * Implementations using the RGB distance must return the same index as
+     * {@link ColorPalette#findNearest(int, int, int)}.
+     *
+     * @param r {@link int}
+     * @param g {@link int}
+     * @param b {@link int}
+     * @return {@link int} index of the closest color, or -1 if the palette is empty
+     */
+    public int findNearest(int r, int g, int b);
+
+}
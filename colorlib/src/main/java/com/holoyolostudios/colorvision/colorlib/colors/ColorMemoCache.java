@@ -0,0 +1,240 @@
+/*
+ * Copyright 2014 Martin Brabham
+ * Copyright 2014 Daniel Velazco
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+package com.holoyolostudios.colorvision.colorlib.colors;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * ColorMemoCache
+ * <p/>
+ * Bounded memo of recent matches in front of another {@link ColorMatcher}. Consecutive frames
+ * mostly produce the same or nearly the same colors, so most lookups are answered without
+ * searching the palette.
+ * <p/>
+ * Entries are primitive longs packing the 24 bit RGB key with the palette index, stored in an
+ * open-addressed table of {@link #WAYS}-way sets. A key can only live in the set its hash
+ * selects. When the set is full, CLOCK picks the entry to evict: each entry has a reference
+ * bit set on every hit, and the set's hand clears bits as it passes until it reaches an entry
+ * that was not used since the last pass.
+ * <p/>
+ * Safe for any number of threads. Every entry is written in one atomic store, so a lookup sees
+ * either a complete entry or none; threads racing on the same set can at worst evict an entry
+ * early. Entries never go stale because the matcher behind the cache never changes, a new
+ * palette gets a new cache.
+ * <p/>
+ *
+ * @author Daniel Velazco
+ * @author Martin Brabham
+ */
+public class ColorMemoCache implements ColorMatcher {
+
+    // Constants
+    public static final int WAYS = 4;
+    public static final int DEFAULT_CAPACITY = 4096;
+    private static final long EMPTY = 0;
+    private static final long REFERENCED = 1L << 31;
+    private static final int HASH_MULTIPLIER = 0x9E3779B1;
+    private static final int TIMED_MISS_MASK = 15;
+
+    // Members
+    private final ColorMatcher mMatcher;
+    private final AtomicLongArray mEntries;
+    private final AtomicIntegerArray mHands;
+    private final int mSetShift;
+    private final AtomicLong mHits = new AtomicLong();
+    private final AtomicLong mMisses = new AtomicLong();
+    private final AtomicLong mEvictions = new AtomicLong();
+    private final AtomicLong mMissNanos = new AtomicLong();
+    private final AtomicLong mTimedMisses = new AtomicLong();
+
+    /**
+     * Constructor holding {@link #DEFAULT_CAPACITY} entries
+     *
+     * @param matcher {@link ColorMatcher} to cache the matches of
+     */
+    public ColorMemoCache(ColorMatcher matcher) {
+        this(matcher, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param matcher  {@link ColorMatcher} to cache the matches of
+     * @param capacity {@link int} number of entries, rounded up to a power of two of at least
+     *                 {@link #WAYS}
+     */
+    public ColorMemoCache(ColorMatcher matcher, int capacity) {
+        if (capacity < 1 || capacity > (1 << 24)) {
+            throw new IllegalArgumentException("Capacity must be between 1 and 2^24: " + capacity);
+        }
+        int sets = Math.max(1, Integer.highestOneBit(capacity - 1) * 2 / WAYS);
+        mMatcher = matcher;
+        mEntries = new AtomicLongArray(sets * WAYS);
+        mHands = new AtomicIntegerArray(sets);
+        mSetShift = 32 - Integer.numberOfTrailingZeros(sets);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int findNearest(int r, int g, int b) {
+        // Keys are stored plus one so that an all-zero entry is empty
+        long key = ((r << 16) | (g << 8) | b) + 1;
+        int set = (mSetShift == 32) ? 0 : (int) key * HASH_MULTIPLIER >>> mSetShift;
+        int base = set * WAYS;
+        for (int way = 0; way < WAYS; way++) {
+            long entry = mEntries.get(base + way);
+            if (entry >>> 32 == key) {
+                if ((entry & REFERENCED) == 0) {
+                    mEntries.compareAndSet(base + way, entry, entry | REFERENCED);
+                }
+                mHits.incrementAndGet();
+                return (int) (entry & ~REFERENCED);
+            }
+        }
+
+        // Only every 16th miss is timed, reading the clock costs about as much as a hit
+        int index;
+        if ((mMisses.incrementAndGet() & TIMED_MISS_MASK) == 0) {
+            long start = System.nanoTime();
+            index = mMatcher.findNearest(r, g, b);
+            mMissNanos.addAndGet(System.nanoTime() - start);
+            mTimedMisses.incrementAndGet();
+        } else {
+            index = mMatcher.findNearest(r, g, b);
+        }
+        if (index >= 0) {
+            insert(base, set, (key << 32) | index);
+        }
+        return index;
+    }
+
+    /**
+     * Store an entry in a set, in an empty slot if there is one, otherwise in place of the first
+     * entry the CLOCK hand reaches without a reference bit
+     */
+    private void insert(int base, int set, long entry) {
+        for (int way = 0; way < WAYS; way++) {
+            if (mEntries.get(base + way) == EMPTY && mEntries.compareAndSet(base + way, EMPTY, entry)) {
+                return;
+            }
+        }
+
+        // A full round clears every bit it passes, so the entry under the hand goes at the latest
+        int hand = mHands.get(set);
+        for (int step = 0; step <= WAYS; step++) {
+            int slot = base + ((hand + step) & (WAYS - 1));
+            long victim = mEntries.get(slot);
+            if ((victim & REFERENCED) != 0 && step < WAYS) {
+                mEntries.compareAndSet(slot, victim, victim & ~REFERENCED);
+                continue;
+            }
+            mEntries.set(slot, entry);
+            mHands.set(set, (hand + step + 1) & (WAYS - 1));
+            mEvictions.incrementAndGet();
+            return;
+        }
+    }
+
+    /**
+     * Drop every entry, keeping the counters
+     */
+    public void clear() {
+        for (int i = 0; i < mEntries.length(); i++) {
+            mEntries.set(i, EMPTY);
+        }
+    }
+
+    /**
+     * Get the number of entries the cache can hold
+     *
+     * @return {@link int}
+     */
+    public int getCapacity() {
+        return mEntries.length();
+    }
+
+    /**
+     * Get the number of lookups answered from the cache
+     *
+     * @return {@link long}
+     */
+    public long getHits() {
+        return mHits.get();
+    }
+
+    /**
+     * Get the number of lookups passed on to the matcher
+     *
+     * @return {@link long}
+     */
+    public long getMisses() {
+        return mMisses.get();
+    }
+
+    /**
+     * Get the number of entries replaced to make room for another
+     *
+     * @return {@link long}
+     */
+    public long getEvictions() {
+        return mEvictions.get();
+    }
+
+    /**
+     * Get the fraction of lookups answered from the cache
+     *
+     * @return {@link double} 0 before the first lookup
+     */
+    public double getHitRate() {
+        long hits = mHits.get();
+        long total = hits + mMisses.get();
+        return (total == 0) ? 0 : (double) hits / total;
+    }
+
+    /**
+     * Get the average time the matcher took to answer a miss, measured on a sample of the misses
+     *
+     * @return {@link long} nanoseconds, 0 before the first timed miss
+     */
+    public long getAverageMissTime() {
+        long misses = mTimedMisses.get();
+        return (misses == 0) ? 0 : mMissNanos.get() / misses;
+    }
+
+    /**
+     * Reset the counters, keeping the entries
+     */
+    public void resetStats() {
+        mHits.set(0);
+        mMisses.set(0);
+        mEvictions.set(0);
+        mMissNanos.set(0);
+        mTimedMisses.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return "ColorMemoCache{capacity=" + getCapacity() + ", hits=" + mHits.get() + ", misses=" + mMisses.get()
+                + ", evictions=" + mEvictions.get() + ", hitRate=" + getHitRate()
+                + ", averageMissNs=" + getAverageMissTime() + "}";
+    }
+
+}
@@ -0,0 +1,457 @@
+/*
+ * Copyright 2014 Martin Brabham
+ * Copyright 2014 Daniel Velazco
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+package com.holoyolostudios.colorvision.colorlib.colors;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+
+/**
+ * ColorPalette
+ * <p/>
+ * Immutable set of named colors stored as flat primitive arrays so that nearest color
+ * matching can run without allocating or dereferencing an object per palette entry.
+ * <p/>
+ * A palette can also be read from the compiled binary format produced by
+ * colorlib/colors/build-palette.sh. All values are big-endian:
+ * <pre>
+ *  0  int        magic "CPAL"
+ *  4  int        format version
+ *  8  int        color count N
+ * 12  int        shade count S
+ * 16  byte[4]    lookup table bits for red, green, blue and a padding byte, all 0 if absent
+ * 20  int        string table offset
+ * 24  int        lookup table offset, 0 if absent
+ * 28  byte[N]    red values, then green, blue and shade ids, one byte each
+ *     int[S]     shade name offsets into the string table
+ *     int[N]     color name offsets into the string table
+ *     ...        string table, each entry a u16 length followed by UTF-8 bytes, stored once
+ *     short[]    lookup table cells, see {@link ColorLookupTable}
+ * </pre>
+ * Color names are only decoded from the string table the first time they are asked for.
+ * <p/>
+ *
+ * @author Daniel Velazco
+ * @author Martin Brabham
+ */
+public class ColorPalette implements ColorMatcher {
+
+    // Constants
+    public static final int MAGIC = 0x4350414C;
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 28;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    // Members
+    private final int mSize;
+    private final int[] mReds;
+    private final int[] mGreens;
+    private final int[] mBlues;
+    private final int[] mShadeIds;
+    private final String[] mShadeNames;
+    private final String[] mNames;
+    private final String[] mLabels;
+
+    // Binary palette members
+    private final ByteBuffer mBuffer;
+    private final int mShadeOffsetsPosition;
+    private final int mNameOffsetsPosition;
+    private final int mStringsOffset;
+    private final int mLookupOffset;
+    private final int mLookupRedBits;
+    private final int mLookupGreenBits;
+    private final int mLookupBlueBits;
+
+    /**
+     * Constructor. All arrays must have the same length, the arrays are not copied.
+     *
+     * @param shades {@link String} array of shade names
+     * @param names  {@link String} array of color names
+     * @param reds   {@link int} array of red values
+     * @param greens {@link int} array of green values
+     * @param blues  {@link int} array of blue values
+     */
+    public ColorPalette(String[] shades, String[] names, int[] reds, int[] greens, int[] blues) {
+        int size = names.length;
+        if (shades.length != size || reds.length != size || greens.length != size || blues.length != size) {
+            throw new IllegalArgumentException("All palette arrays must have the same length.");
+        }
+        mSize = size;
+        mNames = names;
+        mLabels = new String[size];
+        mReds = reds;
+        mGreens = greens;
+        mBlues = blues;
+
+        // Give every distinct shade an id, in order of first appearance
+        HashMap<String, Integer> shadeIds = new HashMap<String, Integer>();
+        String[] shadeNames = new String[size];
+        mShadeIds = new int[size];
+        for (int i = 0; i < size; i++) {
+            Integer id = shadeIds.get(shades[i]);
+            if (id == null) {
+                id = shadeIds.size();
+                shadeIds.put(shades[i], id);
+                shadeNames[id] = shades[i];
+            }
+            mShadeIds[i] = id;
+        }
+        mShadeNames = new String[shadeIds.size()];
+        System.arraycopy(shadeNames, 0, mShadeNames, 0, mShadeNames.length);
+
+        mBuffer = null;
+        mShadeOffsetsPosition = 0;
+        mNameOffsetsPosition = 0;
+        mStringsOffset = 0;
+        mLookupOffset = 0;
+        mLookupRedBits = 0;
+        mLookupGreenBits = 0;
+        mLookupBlueBits = 0;
+    }
+
+    /**
+     * Constructor for a compiled binary palette. Only the RGB values and shade ids are read
+     * up front, names are decoded on demand.
+     *
+     * @param buffer {@link ByteBuffer} holding the binary palette, it must not be modified afterwards
+     */
+    private ColorPalette(ByteBuffer buffer) {
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IllegalArgumentException("Not a binary color palette.");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IllegalArgumentException("Unsupported color palette version: " + buffer.getInt(4));
+        }
+        int size = buffer.getInt(8);
+        int shadeCount = buffer.getInt(12);
+        mSize = size;
+        mLookupRedBits = buffer.get(16);
+        mLookupGreenBits = buffer.get(17);
+        mLookupBlueBits = buffer.get(18);
+        mStringsOffset = buffer.getInt(20);
+        mLookupOffset = buffer.getInt(24);
+
+        mReds = new int[size];
+        mGreens = new int[size];
+        mBlues = new int[size];
+        mShadeIds = new int[size];
+        int position = HEADER_SIZE;
+        for (int i = 0; i < size; i++) {
+            mReds[i] = buffer.get(position + i) & 0xFF;
+            mGreens[i] = buffer.get(position + size + i) & 0xFF;
+            mBlues[i] = buffer.get(position + 2 * size + i) & 0xFF;
+            mShadeIds[i] = buffer.get(position + 3 * size + i) & 0xFF;
+        }
+        position += 4 * size;
+        mShadeOffsetsPosition = position;
+        position += 4 * shadeCount;
+        mNameOffsetsPosition = position;
+
+        mBuffer = buffer;
+        mShadeNames = new String[shadeCount];
+        mNames = new String[size];
+        mLabels = new String[size];
+    }
+
+    /**
+     * Read a palette from a buffer holding the compiled binary format
+     *
+     * @param buffer {@link ByteBuffer}
+     * @return {@link com.holoyolostudios.colorvision.colorlib.colors.ColorPalette}
+     */
+    public static ColorPalette fromBuffer(ByteBuffer buffer) {
+        return new ColorPalette(buffer);
+    }
+
+    /**
+     * Memory map part of a file holding the compiled binary format
+     *
+     * @param channel {@link FileChannel}
+     * @param offset  {@link long} start of the palette in the file
+     * @param length  {@link long} length of the palette in bytes
+     * @return {@link com.holoyolostudios.colorvision.colorlib.colors.ColorPalette}
+     * @throws IOException if the file could not be mapped
+     */
+    public static ColorPalette map(FileChannel channel, long offset, long length) throws IOException {
+        return new ColorPalette(channel.map(FileChannel.MapMode.READ_ONLY, offset, length));
+    }
+
+    /**
+     * Memory map a file holding the compiled binary format
+     *
+     * @param file {@link File}
+     * @return {@link com.holoyolostudios.colorvision.colorlib.colors.ColorPalette}
+     * @throws IOException if the file could not be mapped
+     */
+    public static ColorPalette map(File file) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            FileChannel channel = in.getChannel();
+            return map(channel, 0, channel.size());
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Get the number of colors in this palette
+     *
+     * @return {@link int}
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Get the number of distinct shades in this palette
+     *
+     * @return {@link int}
+     */
+    public int getShadeCount() {
+        return mShadeNames.length;
+    }
+
+    /**
+     * Get the shade id of the color at the given index
+     *
+     * @param index {@link int}
+     * @return {@link int}
+     */
+    public int getShadeId(int index) {
+        return mShadeIds[index];
+    }
+
+    /**
+     * Get the name of the shade with the given id
+     *
+     * @param shadeId {@link int}
+     * @return {@link String}
+     */
+    public String getShadeName(int shadeId) {
+        String shade = mShadeNames[shadeId];
+        if (shade == null) {
+            shade = readString(mBuffer.getInt(mShadeOffsetsPosition + 4 * shadeId));
+            mShadeNames[shadeId] = shade;
+        }
+        return shade;
+    }
+
+    /**
+     * Get the name of the shade at the given index
+     *
+     * @param index {@link int}
+     * @return {@link String}
+     */
+    public String getShade(int index) {
+        return getShadeName(mShadeIds[index]);
+    }
+
+    /**
+     * Get the name of the color at the given index
+     *
+     * @param index {@link int}
+     * @return {@link String}
+     */
+    public String getName(int index) {
+        String name = mNames[index];
+        if (name == null) {
+            name = readString(mBuffer.getInt(mNameOffsetsPosition + 4 * index));
+            mNames[index] = name;
+        }
+        return name;
+    }
+
+    /**
+     * Get the display label of the color at the given index, its name followed by its shade in
+     * parentheses. Each label is built once and then reused.
+     *
+     * @param index {@link int}
+     * @return {@link String}
+     */
+    public String getLabel(int index) {
+        String label = mLabels[index];
+        if (label == null) {
+            label = getName(index) + " (" + getShade(index) + ")";
+            mLabels[index] = label;
+        }
+        return label;
+    }
+
+    /**
+     * Get the RED value of the color at the given index
+     *
+     * @param index {@link int}
+     * @return {@link int}
+     */
+    public int getRed(int index) {
+        return mReds[index];
+    }
+
+    /**
+     * Get the GREEN value of the color at the given index
+     *
+     * @param index {@link int}
+     * @return {@link int}
+     */
+    public int getGreen(int index) {
+        return mGreens[index];
+    }
+
+    /**
+     * Get the BLUE value of the color at the given index
+     *
+     * @param index {@link int}
+     * @return {@link int}
+     */
+    public int getBlue(int index) {
+        return mBlues[index];
+    }
+
+    /**
+     * Get the squared RGB distance between the color at the given index and the RGB values
+     * passed in the argument.
+     *
+     * @param index {@link int}
+     * @param r     {@link int}
+     * @param g     {@link int}
+     * @param b     {@link int}
+     * @return {@link int}
+     */
+    public int distance(int index, int r, int g, int b) {
+        int rdiff = r - mReds[index];
+        int gdiff = g - mGreens[index];
+        int bdiff = b - mBlues[index];
+        return rdiff * rdiff + gdiff * gdiff + bdiff * bdiff;
+    }
+
+    /**
+     * Find the index of the palette color closest to the RGB values passed in the argument.
+     * Uses the squared RGB distance, which ranks colors exactly like the mean squared error.
+     * When two colors are equally close, the one with the lowest index wins.
+     *
+     * @param r {@link int}
+     * @param g {@link int}
+     * @param b {@link int}
+     * @return {@link int} index of the closest color, or -1 if the palette is empty
+     */
+    @Override
+    public int findNearest(int r, int g, int b) {
+        final int[] reds = mReds;
+        final int[] greens = mGreens;
+        final int[] blues = mBlues;
+        final int size = mSize;
+
+        int closest = -1;
+        int minDistance = Integer.MAX_VALUE;
+        for (int i = 0; i < size; i++) {
+            int rdiff = r - reds[i];
+            int gdiff = g - greens[i];
+            int bdiff = b - blues[i];
+            int distance = rdiff * rdiff + gdiff * gdiff + bdiff * bdiff;
+            if (distance < minDistance) {
+                minDistance = distance;
+                closest = i;
+            }
+        }
+        return closest;
+    }
+
+    /**
+     * Find the k palette colors closest to the RGB values passed in the argument in a single
+     * scan, ordered like {@link #findNearest(int, int, int)}: nearest first, equally close colors
+     * by index. The output arrays are filled in place, nothing is allocated.
+     *
+     * @param r         {@link int}
+     * @param g         {@link int}
+     * @param b         {@link int}
+     * @param k         {@link int} number of colors wanted
+     * @param indices   {@link int} array of at least k entries receiving the palette indices
+     * @param distances {@link int} array of at least k entries receiving the squared RGB distances
+     * @return {@link int} number of colors found, k unless the palette is smaller
+     */
+    public int findNearest(int r, int g, int b, int k, int[] indices, int[] distances) {
+        if (NearestColorHeap.checkCapacity(k, indices, distances) == 0) {
+            return 0;
+        }
+        final int[] reds = mReds;
+        final int[] greens = mGreens;
+        final int[] blues = mBlues;
+        final int size = mSize;
+
+        int found = 0;
+        for (int i = 0; i < size; i++) {
+            int rdiff = r - reds[i];
+            int gdiff = g - greens[i];
+            int bdiff = b - blues[i];
+            int distance = rdiff * rdiff + gdiff * gdiff + bdiff * bdiff;
+
+            // Most colors are rejected against the worst one kept, and a later index never
+            // wins a tie
+            if (found < k || distance < distances[0]) {
+                found = NearestColorHeap.offer(indices, distances, found, k, i, distance);
+            }
+        }
+        NearestColorHeap.sort(indices, distances, found);
+        return found;
+    }
+
+    /**
+     * Check whether this palette carries a precomputed lookup table with the given grid size
+     *
+     * @param redBits   {@link int}
+     * @param greenBits {@link int}
+     * @param blueBits  {@link int}
+     * @return {@link boolean}
+     */
+    public boolean hasLookupTable(int redBits, int greenBits, int blueBits) {
+        return mLookupOffset != 0 && mLookupRedBits == redBits
+                && mLookupGreenBits == greenBits && mLookupBlueBits == blueBits;
+    }
+
+    /**
+     * Copy the precomputed lookup table into the given array
+     *
+     * @param cells {@link short} array sized for the lookup table grid
+     */
+    public void readLookupTable(short[] cells) {
+        ByteBuffer buffer = mBuffer.duplicate();
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        buffer.position(mLookupOffset);
+        buffer.asShortBuffer().get(cells);
+    }
+
+    /**
+     * Decode a string from the string table. Uses absolute reads only, so concurrent
+     * callers never disturb each other.
+     */
+    private String readString(int offset) {
+        int position = mStringsOffset + offset;
+        int length = mBuffer.getShort(position) & 0xFFFF;
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = mBuffer.get(position + 2 + i);
+        }
+        return new String(bytes, UTF_8);
+    }
+
+}
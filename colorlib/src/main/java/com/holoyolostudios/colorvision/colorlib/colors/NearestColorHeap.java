@@ -0,0 +1,128 @@
+/*
+ * Copyright 2014 Martin Brabham
+ * Copyright 2014 Daniel Velazco
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+package com.holoyolostudios.colorvision.colorlib.colors;
+
+/**
+ * NearestColorHeap
+ * <p/>
+ * Bounded max-heap of palette candidates kept in a caller's index and distance arrays, used to
+ * collect the k nearest colors in one pass without allocating. The root holds the worst of the
+ * candidates kept so far, ordered by distance and then by index so results match the tie
+ * breaking of {@link ColorPalette#findNearest(int, int, int)}.
+ * <p/>
+ *
+ * @author Daniel Velazco
+ * @author Martin Brabham
+ */
+final class NearestColorHeap {
+
+    /**
+     * Static helpers only
+     */
+    private NearestColorHeap() {
+    }
+
+    /**
+     * Check the arguments of a k nearest query and get how many results it can hold
+     */
+    static int checkCapacity(int k, int[] indices, int[] distances) {
+        if (k < 0 || indices.length < k || distances.length < k) {
+            throw new IllegalArgumentException("Output arrays must hold k = " + k + " results.");
+        }
+        return k;
+    }
+
+    /**
+     * Offer a candidate to a heap of size entries holding at most k
+     *
+     * @return the new size
+     */
+    static int offer(int[] indices, int[] distances, int size, int k, int index, int distance) {
+        if (size < k) {
+            // Append and sift up
+            int child = size;
+            while (child > 0) {
+                int parent = (child - 1) >>> 1;
+                if (!isWorse(distance, index, distances[parent], indices[parent])) {
+                    break;
+                }
+                indices[child] = indices[parent];
+                distances[child] = distances[parent];
+                child = parent;
+            }
+            indices[child] = index;
+            distances[child] = distance;
+            return size + 1;
+        }
+        if (k > 0 && isWorse(distances[0], indices[0], distance, index)) {
+            siftDown(indices, distances, size, index, distance);
+        }
+        return size;
+    }
+
+    /**
+     * Check whether a candidate at the given distance could still enter the heap
+     */
+    static boolean accepts(int[] distances, int size, int k, long distance) {
+        return size < k || (k > 0 && distance <= distances[0]);
+    }
+
+    /**
+     * Sort a heap of size entries in place, nearest first
+     */
+    static void sort(int[] indices, int[] distances, int size) {
+        for (int end = size - 1; end > 0; end--) {
+            int index = indices[end];
+            int distance = distances[end];
+            indices[end] = indices[0];
+            distances[end] = distances[0];
+            siftDown(indices, distances, end, index, distance);
+        }
+    }
+
+    /**
+     * Put a candidate at the root of a heap of size entries and move it down to its place
+     */
+    private static void siftDown(int[] indices, int[] distances, int size, int index, int distance) {
+        int parent = 0;
+        while (true) {
+            int child = 2 * parent + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && isWorse(distances[child + 1], indices[child + 1], distances[child], indices[child])) {
+                child++;
+            }
+            if (!isWorse(distances[child], indices[child], distance, index)) {
+                break;
+            }
+            indices[parent] = indices[child];
+            distances[parent] = distances[child];
+            parent = child;
+        }
+        indices[parent] = index;
+        distances[parent] = distance;
+    }
+
+    /**
+     * Order candidates by distance, then by index
+     */
+    private static boolean isWorse(int distance, int index, int otherDistance, int otherIndex) {
+        return distance > otherDistance || (distance == otherDistance && index > otherIndex);
+    }
+
+}
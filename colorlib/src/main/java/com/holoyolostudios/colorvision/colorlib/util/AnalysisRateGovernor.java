@@ -0,0 +1,251 @@
+/*
+ * Copyright 2014 Martin Brabham
+ * Copyright 2014 Daniel Velazco
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+package com.holoyolostudios.colorvision.colorlib.util;
+
+/**
+ * AnalysisRateGovernor
+ * <p/>
+ * Paces frame analysis. Two decisions are made after every analyzed frame:
+ * <ul>
+ * <li>Rate: the interval between analyses starts at the minimum interval. After
+ * {@link #DEFAULT_STABLE_FRAMES} consecutive frames without a change it doubles, up to the
+ * maximum interval, and any change brings it straight back to the minimum.</li>
+ * <li>Subsampling: a moving average of the time spent per analyzed frame is compared against
+ * the frame-time budget. Above it the sampling stride doubles, up to {@link #MAX_STRIDE}. When
+ * the stride could be halved and still stay under half the budget, it is halved.</li>
+ * </ul>
+ * Decisions are made on the analysis thread, the metrics can be read from any thread.
+ * <p/>
+ *
+ * @author Martin Brabham
+ * @author Daniel Velazco
+ */
+public class AnalysisRateGovernor {
+
+    // Constants
+    public static final int STATE_ACTIVE = 0;
+    public static final int STATE_SLOWED = 1;
+    public static final long DEFAULT_MIN_INTERVAL_NANOS = 33000000L;
+    public static final long DEFAULT_MAX_INTERVAL_NANOS = 500000000L;
+    public static final long DEFAULT_BUDGET_NANOS = 8000000L;
+    public static final int DEFAULT_STABLE_FRAMES = 10;
+    public static final int MAX_STRIDE = 8;
+
+    // Configuration
+    private volatile long mMinIntervalNanos = DEFAULT_MIN_INTERVAL_NANOS;
+    private volatile long mMaxIntervalNanos = DEFAULT_MAX_INTERVAL_NANOS;
+    private volatile long mBudgetNanos = DEFAULT_BUDGET_NANOS;
+    private volatile int mStableFrames = DEFAULT_STABLE_FRAMES;
+
+    // State, written on the analysis thread
+    private volatile long mIntervalNanos = DEFAULT_MIN_INTERVAL_NANOS;
+    private volatile int mStride = 1;
+    private volatile long mAverageFrameNanos = 0;
+    private int mUnchangedFrames = 0;
+    private long mNextFrameTime = 0;
+
+    // Metrics
+    private volatile long mRateDecreases = 0;
+    private volatile long mRateResets = 0;
+    private volatile long mStrideIncreases = 0;
+    private volatile long mStrideDecreases = 0;
+
+    /**
+     * Set the shortest interval between analyzed frames, the rate used while readings change
+     *
+     * @param minIntervalNanos {@link Long}
+     */
+    public void setMinInterval(long minIntervalNanos) {
+        mMinIntervalNanos = minIntervalNanos;
+    }
+
+    /**
+     * Set the longest interval between analyzed frames, the rate used while readings are stable
+     *
+     * @param maxIntervalNanos {@link Long}
+     */
+    public void setMaxInterval(long maxIntervalNanos) {
+        mMaxIntervalNanos = maxIntervalNanos;
+    }
+
+    /**
+     * Set the time one frame may take to analyze before the area gets subsampled
+     *
+     * @param budgetNanos {@link Long}
+     */
+    public void setFrameBudget(long budgetNanos) {
+        mBudgetNanos = budgetNanos;
+    }
+
+    /**
+     * Set how many consecutive unchanged frames it takes to halve the rate
+     *
+     * @param stableFrames {@link Integer}
+     */
+    public void setStableFrames(int stableFrames) {
+        mStableFrames = Math.max(1, stableFrames);
+    }
+
+    /**
+     * Return to the full rate and stride, keeping the metrics
+     */
+    public void reset() {
+        mIntervalNanos = mMinIntervalNanos;
+        mStride = 1;
+        mAverageFrameNanos = 0;
+        mUnchangedFrames = 0;
+        mNextFrameTime = 0;
+    }
+
+    /**
+     * Get how long to wait before analyzing the next frame
+     *
+     * @param now {@link Long} {@link System#nanoTime()}
+     * @return {@link Long} nanoseconds, 0 or less if a frame may be analyzed now
+     */
+    public long getDelay(long now) {
+        return mNextFrameTime - now;
+    }
+
+    /**
+     * Record an analyzed frame and make the rate and stride decisions for the next one
+     *
+     * @param start    {@link Long} {@link System#nanoTime()} when analysis of the frame started
+     * @param duration {@link Long} nanoseconds spent analyzing the frame
+     * @param changed  {@link Boolean} whether the frame was averaged rather than skipped as unchanged
+     */
+    public void onFrameAnalyzed(long start, long duration, boolean changed) {
+        // Rate
+        long interval = mIntervalNanos;
+        if (changed) {
+            mUnchangedFrames = 0;
+            if (interval != mMinIntervalNanos) {
+                interval = mMinIntervalNanos;
+                mRateResets++;
+            }
+        } else if (++mUnchangedFrames >= mStableFrames && interval < mMaxIntervalNanos) {
+            mUnchangedFrames = 0;
+            interval = Math.min(mMaxIntervalNanos, interval * 2);
+            mRateDecreases++;
+        }
+        mIntervalNanos = interval;
+        mNextFrameTime = start + interval;
+
+        // Stride, only frames that were averaged say anything about the cost of averaging
+        if (changed) {
+            // Starting from zero keeps one slow first frame, such as before the JIT warms up,
+            // from raising the stride on its own
+            long average = mAverageFrameNanos;
+            average += (duration - average) / 4;
+            int stride = mStride;
+            long budget = mBudgetNanos;
+            if (average > budget && stride < MAX_STRIDE) {
+                // Averaging cost scales with the number of samples, stride squared
+                stride *= 2;
+                average /= 4;
+                mStrideIncreases++;
+            } else if (stride > 1 && average * 4 < budget / 2) {
+                stride /= 2;
+                average *= 4;
+                mStrideDecreases++;
+            }
+            mStride = stride;
+            mAverageFrameNanos = average;
+        }
+    }
+
+    /**
+     * Get the current state, {@link #STATE_ACTIVE} at the full rate, {@link #STATE_SLOWED} otherwise
+     *
+     * @return {@link Integer}
+     */
+    public int getState() {
+        return (mIntervalNanos > mMinIntervalNanos) ? STATE_SLOWED : STATE_ACTIVE;
+    }
+
+    /**
+     * Get the current interval between analyzed frames
+     *
+     * @return {@link Long} nanoseconds
+     */
+    public long getInterval() {
+        return mIntervalNanos;
+    }
+
+    /**
+     * Get the current sampling stride, 1 for every pixel
+     *
+     * @return {@link Integer}
+     */
+    public int getStride() {
+        return mStride;
+    }
+
+    /**
+     * Get the moving average of the time spent averaging a frame, scaled to the current stride
+     *
+     * @return {@link Long} nanoseconds
+     */
+    public long getAverageFrameTime() {
+        return mAverageFrameNanos;
+    }
+
+    /**
+     * Get how many times the rate was halved because readings were stable
+     *
+     * @return {@link Long}
+     */
+    public long getRateDecreases() {
+        return mRateDecreases;
+    }
+
+    /**
+     * Get how many times the rate went back to the full rate because a reading changed
+     *
+     * @return {@link Long}
+     */
+    public long getRateResets() {
+        return mRateResets;
+    }
+
+    /**
+     * Get how many times the stride was raised because frames went over the budget
+     *
+     * @return {@link Long}
+     */
+    public long getStrideIncreases() {
+        return mStrideIncreases;
+    }
+
+    /**
+     * Get how many times the stride was lowered because frames were well under the budget
+     *
+     * @return {@link Long}
+     */
+    public long getStrideDecreases() {
+        return mStrideDecreases;
+    }
+
+    @Override
+    public String toString() {
+        return "AnalysisRateGovernor{state=" + getState() + ", intervalMs=" + (mIntervalNanos / 1000000)
+                + ", stride=" + mStride + ", averageFrameUs=" + (mAverageFrameNanos / 1000)
+                + ", rateDecreases=" + mRateDecreases + ", rateResets=" + mRateResets
+                + ", strideIncreases=" + mStrideIncreases + ", strideDecreases=" + mStrideDecreases + "}";
+    }
+
+}
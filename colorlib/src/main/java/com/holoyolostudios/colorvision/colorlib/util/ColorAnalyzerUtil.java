@@ -29,36 +29,232 @@ import android.graphics.Color;
  */
 public class ColorAnalyzerUtil {
 
-    // Constants
-    public static int FRAME_WIDTH = 640;
-    public static int FRAME_HEIGHT = 480;
+    // Averaging modes
+    public static final int AVERAGE_MODE_EXACT = 0;
+    public static final int AVERAGE_MODE_YUV = 1;
+    public static final int AVERAGE_MODE_MEDIAN = 2;
+    public static final int AVERAGE_MODE_TRIMMED = 3;
+
+    // Fixed-point BT.601 conversion tables, contributions of U and V scaled by 2^16
+    private static final int FIXED_SHIFT = 16;
+    private static final int[] V_TO_RED = new int[256];
+    private static final int[] U_TO_GREEN = new int[256];
+    private static final int[] V_TO_GREEN = new int[256];
+    private static final int[] U_TO_BLUE = new int[256];
+
+    // Sampling modes
+    public static final int SAMPLING_MODE_STRIDE = 0;
+    public static final int SAMPLING_MODE_JITTERED = 1;
+    public static final int SAMPLING_MODE_BUDGET = 2;
+
+    // Length of a hex code written by formatHexCode, including the leading '#'
+    public static final int HEX_CODE_LENGTH = 7;
+
+    // Hex digits indexed by nibble
+    private static final char[] HEX_DIGITS = {
+            '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'A', 'B', 'C', 'D', 'E', 'F'
+    };
+
+    // Clamp table covering every value the conversion can produce
+    private static final int CLAMP_OFFSET = 256;
+    private static final int[] CLAMP = new int[768];
+
+    static {
+        // Use the same float coefficients as getColorAtPoint so both paths agree
+        for (int i = 0; i < 256; i++) {
+            V_TO_RED[i] = Math.round(1.402f * (i - 128) * (1 << FIXED_SHIFT));
+            U_TO_GREEN[i] = Math.round(-0.344f * (i - 128) * (1 << FIXED_SHIFT));
+            V_TO_GREEN[i] = Math.round(-0.714f * (i - 128) * (1 << FIXED_SHIFT));
+            U_TO_BLUE[i] = Math.round(1.772f * (i - 128) * (1 << FIXED_SHIFT));
+        }
+        for (int i = 0; i < CLAMP.length; i++) {
+            int value = i - CLAMP_OFFSET;
+            CLAMP[i] = (value < 0) ? 0 : (value > 255) ? 255 : value;
+        }
+    }
+
+    /**
+     * Write the upper-case "#RRGGBB" hex code of a pixel into a char array, without allocating.
+     * The alpha channel is ignored.
+     *
+     * @param pixel  {@link Integer}
+     * @param out    char array with room for {@link #HEX_CODE_LENGTH} chars at offset
+     * @param offset {@link Integer}
+     * @return {@link Integer} number of chars written
+     */
+    public static int formatHexCode(int pixel, char[] out, int offset) {
+        out[offset] = '#';
+        for (int i = HEX_CODE_LENGTH - 1; i > 0; i--) {
+            out[offset + i] = HEX_DIGITS[pixel & 0xF];
+            pixel >>>= 4;
+        }
+        return HEX_CODE_LENGTH;
+    }
 
     /**
      * Get the average color of a rect area of a YUV420SPNV21 byte array
      *
-     * @param yuv byte array
-     * @param x1  {@link Integer}
-     * @param y1  {@link Integer}
-     * @param x2  {@link Integer}
-     * @param y2  {@link Integer}
+     * @param frame {@link com.holoyolostudios.colorvision.colorlib.util.FrameDescriptor}
+     * @param yuv   byte array
+     * @param x1    {@link Integer}
+     * @param y1    {@link Integer}
+     * @param x2    {@link Integer}
+     * @param y2    {@link Integer}
+     * @return {@link com.holoyolostudios.colorvision.colorlib.util.ColorAnalyzerUtil.RGBColor}
+     */
+    public static RGBColor getAverageColor(FrameDescriptor frame, byte[] yuv, int x1, int y1, int x2, int y2) {
+        return getAverageColor(frame, yuv, x1, y1, x2, y2, AVERAGE_MODE_EXACT);
+    }
+
+    /**
+     * Get the average color of a rect area of a YUV420SPNV21 byte array.
+     * <p/>
+     * {@link #AVERAGE_MODE_EXACT} converts every pixel to RGB and averages the results.
+     * {@link #AVERAGE_MODE_YUV} averages Y, U and V first and converts once. The conversion is
+     * affine apart from clamping, so as long as no pixel in the area clamps the result is within 1
+     * of the exact mode on every channel (the exact mode truncates per pixel, this mode once).
+     * Chroma is read once per 2x2 block and Y/U/V ranges are tracked; when those ranges show that
+     * some pixel could clamp, the exact mode is used instead, so the error bound always holds.
+     * <p/>
+     * {@link #AVERAGE_MODE_MEDIAN} and {@link #AVERAGE_MODE_TRIMMED} are not averages but robust
+     * estimates that ignore highlights and shadows covering a small part of the area, see
+     * {@link #getRobustColorPixel}. Called through this method they allocate their histograms.
+     *
+     * @param frame {@link com.holoyolostudios.colorvision.colorlib.util.FrameDescriptor}
+     * @param yuv   byte array
+     * @param x1    {@link Integer}
+     * @param y1    {@link Integer}
+     * @param x2    {@link Integer}
+     * @param y2    {@link Integer}
+     * @param mode  one of the AVERAGE_MODE constants
      * @return {@link com.holoyolostudios.colorvision.colorlib.util.ColorAnalyzerUtil.RGBColor}
      */
-    public static RGBColor getAverageColor(byte[] yuv, int x1, int y1, int x2, int y2) {
+    public static RGBColor getAverageColor(FrameDescriptor frame, byte[] yuv, int x1, int y1, int x2, int y2,
+                                           int mode) {
+        return getAverageColor(frame, yuv, x1, y1, x2, y2, mode, new RGBColor(0, 0, 0));
+    }
+
+    /**
+     * Get the average color of a rect area of a YUV420SPNV21 byte array into a caller-owned
+     * result, see {@link #getAverageColor(FrameDescriptor, byte[], int, int, int, int, int)}.
+     * Allocation-free except in the robust modes, which need the overload taking a histogram.
+     *
+     * @param frame {@link com.holoyolostudios.colorvision.colorlib.util.FrameDescriptor}
+     * @param yuv   byte array
+     * @param x1    {@link Integer}
+     * @param y1    {@link Integer}
+     * @param x2    {@link Integer}
+     * @param y2    {@link Integer}
+     * @param mode  one of the AVERAGE_MODE constants
+     * @param out   {@link com.holoyolostudios.colorvision.colorlib.util.ColorAnalyzerUtil.RGBColor} to overwrite
+     * @return out
+     */
+    public static RGBColor getAverageColor(FrameDescriptor frame, byte[] yuv, int x1, int y1, int x2, int y2,
+                                           int mode, RGBColor out) {
+        out.setPixel(getAverageColorPixel(frame, yuv, x1, y1, x2, y2, mode));
+        return out;
+    }
+
+    /**
+     * Get the average color of a rect area of a YUV420SPNV21 byte array into a caller-owned
+     * result, reusing a caller-owned histogram in the robust modes so no mode allocates
+     *
+     * @param frame     {@link com.holoyolostudios.colorvision.colorlib.util.FrameDescriptor}
+     * @param yuv       byte array
+     * @param x1        {@link Integer}
+     * @param y1        {@link Integer}
+     * @param x2        {@link Integer}
+     * @param y2        {@link Integer}
+     * @param mode      one of the AVERAGE_MODE constants
+     * @param out       {@link com.holoyolostudios.colorvision.colorlib.util.ColorAnalyzerUtil.RGBColor} to overwrite
+     * @param histogram {@link com.holoyolostudios.colorvision.colorlib.util.RoiHistogram} to reuse
+     * @return out
+     */
+    public static RGBColor getAverageColor(FrameDescriptor frame, byte[] yuv, int x1, int y1, int x2, int y2,
+                                           int mode, RGBColor out, RoiHistogram histogram) {
+        out.setPixel(getAverageColorPixel(frame, yuv, x1, y1, x2, y2, mode, 1, histogram));
+        return out;
+    }
+
+    /**
+     * Get the average color of a rect area of a YUV420SPNV21 byte array as a packed opaque ARGB
+     * pixel, see {@link #getAverageColor(FrameDescriptor, byte[], int, int, int, int, int)}.
+     * The robust modes allocate their histograms here, see
+     * {@link #getAverageColorPixel(FrameDescriptor, byte[], int, int, int, int, int, int, RoiHistogram)}.
+     *
+     * @param frame {@link com.holoyolostudios.colorvision.colorlib.util.FrameDescriptor}
+     * @param yuv   byte array
+     * @param x1    {@link Integer}
+     * @param y1    {@link Integer}
+     * @param x2    {@link Integer}
+     * @param y2    {@link Integer}
+     * @param mode  one of the AVERAGE_MODE constants
+     * @return {@link Integer}
+     */
+    public static int getAverageColorPixel(FrameDescriptor frame, byte[] yuv, int x1, int y1, int x2, int y2,
+                                           int mode) {
+        if (mode == AVERAGE_MODE_MEDIAN || mode == AVERAGE_MODE_TRIMMED) {
+            return getRobustColorPixel(frame, yuv, x1, y1, x2, y2, mode, 1, new RoiHistogram());
+        }
+        if (mode == AVERAGE_MODE_YUV) {
+            int pixel = getAverageColorYuv(frame, yuv, x1, y1, x2, y2);
+            if (pixel != 0) {
+                return pixel;
+            }
+        }
+
+        // Hoist the frame layout out of the loops
+        final int yStride = frame.getYStride();
+        final int uvStride = frame.getUvStride();
+        final int uvOffset = frame.getUvOffset();
+        final int[] clamp = CLAMP;
 
         // Set variables
-        int i = 0;
+        int i = (x2 - x1 + 1) * (y2 - y1);
         int j = 0;
         int k = 0;
         int m = 0;
 
-        // Gather pixel data for the square
-        for (int i1 = x1; i1 <= x2; i1++) {
-            for (int i2 = y1; i2 < y2; i2++) {
-                int color = getColorAtPoint(yuv, i1, i2);
-                j += Color.red(color);
-                k += Color.green(color);
-                m += Color.blue(color);
-                i++;
+        // Walk the square row by row, NV21 is row-major. Each pair of pixels shares one
+        // V/U sample, so chroma is read and converted once per pair.
+        for (int y = y1; y < y2; y++) {
+            int row = y * yStride;
+            int uvRow = uvOffset + (y >> 1) * uvStride;
+            int x = x1;
+
+            // Odd leading pixel, its chroma pair starts one pixel to the left
+            if ((x & 1) != 0 && x <= x2) {
+                int luma = (0xFF & yuv[row + x]) << FIXED_SHIFT;
+                int v = 0xFF & yuv[uvRow + x - 1];
+                int u = 0xFF & yuv[uvRow + x];
+                j += clamp[((luma + V_TO_RED[v]) >> FIXED_SHIFT) + CLAMP_OFFSET];
+                k += clamp[((luma + U_TO_GREEN[u] + V_TO_GREEN[v]) >> FIXED_SHIFT) + CLAMP_OFFSET];
+                m += clamp[((luma + U_TO_BLUE[u]) >> FIXED_SHIFT) + CLAMP_OFFSET];
+                x++;
+            }
+
+            // Whole pairs
+            for (; x < x2; x += 2) {
+                int v = 0xFF & yuv[uvRow + x];
+                int u = 0xFF & yuv[uvRow + x + 1];
+                int red = V_TO_RED[v] + (CLAMP_OFFSET << FIXED_SHIFT);
+                int green = U_TO_GREEN[u] + V_TO_GREEN[v] + (CLAMP_OFFSET << FIXED_SHIFT);
+                int blue = U_TO_BLUE[u] + (CLAMP_OFFSET << FIXED_SHIFT);
+                int luma0 = (0xFF & yuv[row + x]) << FIXED_SHIFT;
+                int luma1 = (0xFF & yuv[row + x + 1]) << FIXED_SHIFT;
+                j += clamp[(luma0 + red) >> FIXED_SHIFT] + clamp[(luma1 + red) >> FIXED_SHIFT];
+                k += clamp[(luma0 + green) >> FIXED_SHIFT] + clamp[(luma1 + green) >> FIXED_SHIFT];
+                m += clamp[(luma0 + blue) >> FIXED_SHIFT] + clamp[(luma1 + blue) >> FIXED_SHIFT];
+            }
+
+            // Even trailing pixel without its pair
+            if (x == x2) {
+                int luma = (0xFF & yuv[row + x]) << FIXED_SHIFT;
+                int v = 0xFF & yuv[uvRow + x];
+                int u = 0xFF & yuv[uvRow + x + 1];
+                j += clamp[((luma + V_TO_RED[v]) >> FIXED_SHIFT) + CLAMP_OFFSET];
+                k += clamp[((luma + U_TO_GREEN[u] + V_TO_GREEN[v]) >> FIXED_SHIFT) + CLAMP_OFFSET];
+                m += clamp[((luma + U_TO_BLUE[u]) >> FIXED_SHIFT) + CLAMP_OFFSET];
             }
         }
 
@@ -75,20 +271,682 @@ public class ColorAnalyzerUtil {
         m = (m > 255) ? 255 : m;
         m = (m < 0) ? 0 : m;
 
-        return new RGBColor(j, k, m);
+        return Color.rgb(j, k, m);
+    }
+
+    /**
+     * Get the average color of every stride-th pixel, in both directions, of a rect area of a
+     * YUV420SPNV21 byte array as a packed opaque ARGB pixel. Each sampled pixel is converted
+     * like {@link #AVERAGE_MODE_EXACT}; a stride of 1 is the same as
+     * {@link #getAverageColorPixel(FrameDescriptor, byte[], int, int, int, int, int)}. The robust
+     * modes allocate their histograms here, see
+     * {@link #getAverageColorPixel(FrameDescriptor, byte[], int, int, int, int, int, int, RoiHistogram)}.
+     *
+     * @param frame  {@link com.holoyolostudios.colorvision.colorlib.util.FrameDescriptor}
+     * @param yuv    byte array
+     * @param x1     {@link Integer}
+     * @param y1     {@link Integer}
+     * @param x2     {@link Integer}
+     * @param y2     {@link Integer}
+     * @param mode   {@link #AVERAGE_MODE_YUV} is only used for a stride of 1, the robust modes at any stride
+     * @param stride {@link Integer}
+     * @return {@link Integer}
+     */
+    public static int getAverageColorPixel(FrameDescriptor frame, byte[] yuv, int x1, int y1, int x2, int y2,
+                                           int mode, int stride) {
+        if (mode == AVERAGE_MODE_MEDIAN || mode == AVERAGE_MODE_TRIMMED) {
+            return getRobustColorPixel(frame, yuv, x1, y1, x2, y2, mode, stride, new RoiHistogram());
+        }
+        if (stride <= 1) {
+            return getAverageColorPixel(frame, yuv, x1, y1, x2, y2, mode);
+        }
+
+        final int yStride = frame.getYStride();
+        final int uvStride = frame.getUvStride();
+        final int uvOffset = frame.getUvOffset();
+        final int[] clamp = CLAMP;
+        int count = 0;
+        int red = 0;
+        int green = 0;
+        int blue = 0;
+        for (int y = y1; y < y2; y += stride) {
+            int row = y * yStride;
+            int uvRow = uvOffset + (y >> 1) * uvStride;
+            for (int x = x1; x <= x2; x += stride) {
+                int luma = (0xFF & yuv[row + x]) << FIXED_SHIFT;
+                int v = 0xFF & yuv[uvRow + (x & ~1)];
+                int u = 0xFF & yuv[uvRow + (x & ~1) + 1];
+                red += clamp[((luma + V_TO_RED[v]) >> FIXED_SHIFT) + CLAMP_OFFSET];
+                green += clamp[((luma + U_TO_GREEN[u] + V_TO_GREEN[v]) >> FIXED_SHIFT) + CLAMP_OFFSET];
+                blue += clamp[((luma + U_TO_BLUE[u]) >> FIXED_SHIFT) + CLAMP_OFFSET];
+                count++;
+            }
+        }
+        if (count == 0) {
+            return Color.rgb(0, 0, 0);
+        }
+        return Color.rgb(red / count, green / count, blue / count);
+    }
+
+    /**
+     * Get the average color of every stride-th pixel of a rect area of a YUV420SPNV21 byte array
+     * as a packed opaque ARGB pixel, see
+     * {@link #getAverageColorPixel(FrameDescriptor, byte[], int, int, int, int, int, int)}. The
+     * robust modes reset and refill the given histogram, so no mode allocates.
+     *
+     * @param frame     {@link com.holoyolostudios.colorvision.colorlib.util.FrameDescriptor}
+     * @param yuv       byte array
+     * @param x1        {@link Integer}
+     * @param y1        {@link Integer}
+     * @param x2        {@link Integer}
+     * @param y2        {@link Integer}
+     * @param mode      one of the AVERAGE_MODE constants
+     * @param stride    {@link Integer} 1 for every pixel
+     * @param histogram {@link com.holoyolostudios.colorvision.colorlib.util.RoiHistogram} to reuse
+     * @return {@link Integer}
+     */
+    public static int getAverageColorPixel(FrameDescriptor frame, byte[] yuv, int x1, int y1, int x2, int y2,
+                                           int mode, int stride, RoiHistogram histogram) {
+        if (mode == AVERAGE_MODE_MEDIAN || mode == AVERAGE_MODE_TRIMMED) {
+            return getRobustColorPixel(frame, yuv, x1, y1, x2, y2, mode, stride, histogram);
+        }
+        return getAverageColorPixel(frame, yuv, x1, y1, x2, y2, mode, stride);
+    }
+
+    /**
+     * Get the per-channel median or trimmed mean of every stride-th pixel, in both directions, of
+     * a rect area of a YUV420SPNV21 byte array as a packed opaque ARGB pixel. The histograms are
+     * reset and refilled, pass the same ones every frame to avoid allocating.
+     *
+     * @param frame     {@link com.holoyolostudios.colorvision.colorlib.util.FrameDescriptor}
+     * @param yuv       byte array
+     * @param x1        {@link Integer}
+     * @param y1        {@link Integer}
+     * @param x2        {@link Integer}
+     * @param y2        {@link Integer}
+     * @param mode      {@link #AVERAGE_MODE_MEDIAN}, or {@link #AVERAGE_MODE_TRIMMED} trimming
+     *                  {@link RoiHistogram#DEFAULT_TRIM}
+     * @param stride    {@link Integer} 1 for every pixel
+     * @param histogram {@link com.holoyolostudios.colorvision.colorlib.util.RoiHistogram} to reuse
+     * @return {@link Integer}
+     */
+    public static int getRobustColorPixel(FrameDescriptor frame, byte[] yuv, int x1, int y1, int x2, int y2,
+                                          int mode, int stride, RoiHistogram histogram) {
+        histogram.reset();
+        accumulateHistogram(frame, yuv, x1, y1, x2, y2, stride, histogram);
+        return (mode == AVERAGE_MODE_MEDIAN) ? histogram.getMedianPixel() : histogram.getTrimmedMeanPixel();
+    }
+
+    /**
+     * Gather RGB statistics of a rect area of a YUV420SPNV21 byte array in a single pass and
+     * add them to the given statistics: sums, per-channel minimum and maximum, and optionally sums
+     * of squares. Uses the same bounds and conversion as
+     * {@link #getAverageColor(FrameDescriptor, byte[], int, int, int, int)}, so the average of the
+     * statistics equals the exact average color.
+     *
+     * @param frame       {@link com.holoyolostudios.colorvision.colorlib.util.FrameDescriptor}
+     * @param yuv         byte array
+     * @param x1          {@link Integer}
+     * @param y1          {@link Integer}
+     * @param x2          {@link Integer}
+     * @param y2          {@link Integer}
+     * @param withSquares {@link boolean} whether to gather sums of squares for the variance
+     * @param stats       {@link com.holoyolostudios.colorvision.colorlib.util.RoiStatistics} to add to
+     */
+    public static void accumulateStatistics(FrameDescriptor frame, byte[] yuv, int x1, int y1, int x2, int y2,
+                                            boolean withSquares, RoiStatistics stats) {
+        final int yStride = frame.getYStride();
+        final int uvStride = frame.getUvStride();
+        final int uvOffset = frame.getUvOffset();
+        final int[] clamp = CLAMP;
+
+        long sumRed = 0;
+        long sumGreen = 0;
+        long sumBlue = 0;
+        long squaresRed = 0;
+        long squaresGreen = 0;
+        long squaresBlue = 0;
+        int minRed = 255;
+        int maxRed = 0;
+        int minGreen = 255;
+        int maxGreen = 0;
+        int minBlue = 255;
+        int maxBlue = 0;
+        for (int y = y1; y < y2; y++) {
+            int row = y * yStride;
+            int uvRow = uvOffset + (y >> 1) * uvStride;
+            int rowRed = 0;
+            int rowGreen = 0;
+            int rowBlue = 0;
+            int x = x1;
+
+            // Odd leading pixel, its chroma pair starts one pixel to the left
+            if ((x & 1) != 0 && x <= x2) {
+                int luma = (0xFF & yuv[row + x]) << FIXED_SHIFT;
+                int v = 0xFF & yuv[uvRow + (x & ~1)];
+                int u = 0xFF & yuv[uvRow + (x & ~1) + 1];
+                int r = clamp[((luma + V_TO_RED[v]) >> FIXED_SHIFT) + CLAMP_OFFSET];
+                int g = clamp[((luma + U_TO_GREEN[u] + V_TO_GREEN[v]) >> FIXED_SHIFT) + CLAMP_OFFSET];
+                int b = clamp[((luma + U_TO_BLUE[u]) >> FIXED_SHIFT) + CLAMP_OFFSET];
+                rowRed += r;
+                rowGreen += g;
+                rowBlue += b;
+                if (withSquares) {
+                    squaresRed += r * r;
+                    squaresGreen += g * g;
+                    squaresBlue += b * b;
+                }
+                minRed = (r < minRed) ? r : minRed;
+                maxRed = (r > maxRed) ? r : maxRed;
+                minGreen = (g < minGreen) ? g : minGreen;
+                maxGreen = (g > maxGreen) ? g : maxGreen;
+                minBlue = (b < minBlue) ? b : minBlue;
+                maxBlue = (b > maxBlue) ? b : maxBlue;
+                x++;
+            }
+
+            // Whole pairs share chroma and the conversion is monotonic in luma, so the darker
+            // pixel holds the pair's minimum on every channel and the lighter one the maximum.
+            // The mean-only pass gets its own copy of the loop without the squares.
+            if (withSquares) {
+                for (; x < x2; x += 2) {
+                    int v = 0xFF & yuv[uvRow + x];
+                    int u = 0xFF & yuv[uvRow + x + 1];
+                    int red = V_TO_RED[v] + (CLAMP_OFFSET << FIXED_SHIFT);
+                    int green = U_TO_GREEN[u] + V_TO_GREEN[v] + (CLAMP_OFFSET << FIXED_SHIFT);
+                    int blue = U_TO_BLUE[u] + (CLAMP_OFFSET << FIXED_SHIFT);
+                    int luma0 = 0xFF & yuv[row + x];
+                    int luma1 = 0xFF & yuv[row + x + 1];
+                    int low = ((luma0 < luma1) ? luma0 : luma1) << FIXED_SHIFT;
+                    int high = ((luma0 < luma1) ? luma1 : luma0) << FIXED_SHIFT;
+                    int rLow = clamp[(low + red) >> FIXED_SHIFT];
+                    int rHigh = clamp[(high + red) >> FIXED_SHIFT];
+                    int gLow = clamp[(low + green) >> FIXED_SHIFT];
+                    int gHigh = clamp[(high + green) >> FIXED_SHIFT];
+                    int bLow = clamp[(low + blue) >> FIXED_SHIFT];
+                    int bHigh = clamp[(high + blue) >> FIXED_SHIFT];
+                    rowRed += rLow + rHigh;
+                    rowGreen += gLow + gHigh;
+                    rowBlue += bLow + bHigh;
+                    squaresRed += rLow * rLow + rHigh * rHigh;
+                    squaresGreen += gLow * gLow + gHigh * gHigh;
+                    squaresBlue += bLow * bLow + bHigh * bHigh;
+                    minRed = (rLow < minRed) ? rLow : minRed;
+                    maxRed = (rHigh > maxRed) ? rHigh : maxRed;
+                    minGreen = (gLow < minGreen) ? gLow : minGreen;
+                    maxGreen = (gHigh > maxGreen) ? gHigh : maxGreen;
+                    minBlue = (bLow < minBlue) ? bLow : minBlue;
+                    maxBlue = (bHigh > maxBlue) ? bHigh : maxBlue;
+                }
+            } else {
+                for (; x < x2; x += 2) {
+                    int v = 0xFF & yuv[uvRow + x];
+                    int u = 0xFF & yuv[uvRow + x + 1];
+                    int red = V_TO_RED[v] + (CLAMP_OFFSET << FIXED_SHIFT);
+                    int green = U_TO_GREEN[u] + V_TO_GREEN[v] + (CLAMP_OFFSET << FIXED_SHIFT);
+                    int blue = U_TO_BLUE[u] + (CLAMP_OFFSET << FIXED_SHIFT);
+                    int luma0 = 0xFF & yuv[row + x];
+                    int luma1 = 0xFF & yuv[row + x + 1];
+                    int low = ((luma0 < luma1) ? luma0 : luma1) << FIXED_SHIFT;
+                    int high = ((luma0 < luma1) ? luma1 : luma0) << FIXED_SHIFT;
+                    int rLow = clamp[(low + red) >> FIXED_SHIFT];
+                    int rHigh = clamp[(high + red) >> FIXED_SHIFT];
+                    int gLow = clamp[(low + green) >> FIXED_SHIFT];
+                    int gHigh = clamp[(high + green) >> FIXED_SHIFT];
+                    int bLow = clamp[(low + blue) >> FIXED_SHIFT];
+                    int bHigh = clamp[(high + blue) >> FIXED_SHIFT];
+                    rowRed += rLow + rHigh;
+                    rowGreen += gLow + gHigh;
+                    rowBlue += bLow + bHigh;
+                    minRed = (rLow < minRed) ? rLow : minRed;
+                    maxRed = (rHigh > maxRed) ? rHigh : maxRed;
+                    minGreen = (gLow < minGreen) ? gLow : minGreen;
+                    maxGreen = (gHigh > maxGreen) ? gHigh : maxGreen;
+                    minBlue = (bLow < minBlue) ? bLow : minBlue;
+                    maxBlue = (bHigh > maxBlue) ? bHigh : maxBlue;
+                }
+            }
+
+            // Even trailing pixel without its pair
+            if (x == x2) {
+                int luma = (0xFF & yuv[row + x]) << FIXED_SHIFT;
+                int v = 0xFF & yuv[uvRow + (x & ~1)];
+                int u = 0xFF & yuv[uvRow + (x & ~1) + 1];
+                int r = clamp[((luma + V_TO_RED[v]) >> FIXED_SHIFT) + CLAMP_OFFSET];
+                int g = clamp[((luma + U_TO_GREEN[u] + V_TO_GREEN[v]) >> FIXED_SHIFT) + CLAMP_OFFSET];
+                int b = clamp[((luma + U_TO_BLUE[u]) >> FIXED_SHIFT) + CLAMP_OFFSET];
+                rowRed += r;
+                rowGreen += g;
+                rowBlue += b;
+                if (withSquares) {
+                    squaresRed += r * r;
+                    squaresGreen += g * g;
+                    squaresBlue += b * b;
+                }
+                minRed = (r < minRed) ? r : minRed;
+                maxRed = (r > maxRed) ? r : maxRed;
+                minGreen = (g < minGreen) ? g : minGreen;
+                maxGreen = (g > maxGreen) ? g : maxGreen;
+                minBlue = (b < minBlue) ? b : minBlue;
+                maxBlue = (b > maxBlue) ? b : maxBlue;
+            }
+            sumRed += rowRed;
+            sumGreen += rowGreen;
+            sumBlue += rowBlue;
+        }
+        long count = (long) (x2 - x1 + 1) * (y2 - y1);
+        stats.accumulate(count, count, sumRed, sumGreen, sumBlue, squaresRed, squaresGreen, squaresBlue);
+        stats.accumulateRange(minRed, maxRed, minGreen, maxGreen, minBlue, maxBlue);
+    }
+
+    /**
+     * Add every stride-th pixel, in both directions, of a rect area of a YUV420SPNV21 byte array
+     * to the given per-channel histograms. Pixels are converted like {@link #AVERAGE_MODE_EXACT}.
+     *
+     * @param frame     {@link com.holoyolostudios.colorvision.colorlib.util.FrameDescriptor}
+     * @param yuv       byte array
+     * @param x1        {@link Integer}
+     * @param y1        {@link Integer}
+     * @param x2        {@link Integer}
+     * @param y2        {@link Integer}
+     * @param stride    {@link Integer} 1 for every pixel
+     * @param histogram {@link com.holoyolostudios.colorvision.colorlib.util.RoiHistogram} to add to
+     */
+    public static void accumulateHistogram(FrameDescriptor frame, byte[] yuv, int x1, int y1, int x2, int y2,
+                                           int stride, RoiHistogram histogram) {
+        final int yStride = frame.getYStride();
+        final int uvStride = frame.getUvStride();
+        final int uvOffset = frame.getUvOffset();
+        final int[] clamp = CLAMP;
+        final int[] red = histogram.getRedBins();
+        final int[] green = histogram.getGreenBins();
+        final int[] blue = histogram.getBlueBins();
+        stride = Math.max(1, stride);
+
+        long count = 0;
+        for (int y = y1; y < y2; y += stride) {
+            int row = y * yStride;
+            int uvRow = uvOffset + (y >> 1) * uvStride;
+            int x = x1;
+            if (stride == 1) {
+                // Odd leading pixel, its chroma pair starts one pixel to the left
+                if ((x & 1) != 0 && x <= x2) {
+                    int luma = (0xFF & yuv[row + x]) << FIXED_SHIFT;
+                    int v = 0xFF & yuv[uvRow + (x & ~1)];
+                    int u = 0xFF & yuv[uvRow + (x & ~1) + 1];
+                    red[clamp[((luma + V_TO_RED[v]) >> FIXED_SHIFT) + CLAMP_OFFSET]]++;
+                    green[clamp[((luma + U_TO_GREEN[u] + V_TO_GREEN[v]) >> FIXED_SHIFT) + CLAMP_OFFSET]]++;
+                    blue[clamp[((luma + U_TO_BLUE[u]) >> FIXED_SHIFT) + CLAMP_OFFSET]]++;
+                    x++;
+                }
+
+                // Whole pairs share chroma
+                for (; x < x2; x += 2) {
+                    int v = 0xFF & yuv[uvRow + x];
+                    int u = 0xFF & yuv[uvRow + x + 1];
+                    int r = V_TO_RED[v] + (CLAMP_OFFSET << FIXED_SHIFT);
+                    int g = U_TO_GREEN[u] + V_TO_GREEN[v] + (CLAMP_OFFSET << FIXED_SHIFT);
+                    int b = U_TO_BLUE[u] + (CLAMP_OFFSET << FIXED_SHIFT);
+                    int luma0 = (0xFF & yuv[row + x]) << FIXED_SHIFT;
+                    int luma1 = (0xFF & yuv[row + x + 1]) << FIXED_SHIFT;
+                    red[clamp[(luma0 + r) >> FIXED_SHIFT]]++;
+                    red[clamp[(luma1 + r) >> FIXED_SHIFT]]++;
+                    green[clamp[(luma0 + g) >> FIXED_SHIFT]]++;
+                    green[clamp[(luma1 + g) >> FIXED_SHIFT]]++;
+                    blue[clamp[(luma0 + b) >> FIXED_SHIFT]]++;
+                    blue[clamp[(luma1 + b) >> FIXED_SHIFT]]++;
+                }
+
+                // Even trailing pixel without its pair
+                if (x == x2) {
+                    int luma = (0xFF & yuv[row + x]) << FIXED_SHIFT;
+                    int v = 0xFF & yuv[uvRow + (x & ~1)];
+                    int u = 0xFF & yuv[uvRow + (x & ~1) + 1];
+                    red[clamp[((luma + V_TO_RED[v]) >> FIXED_SHIFT) + CLAMP_OFFSET]]++;
+                    green[clamp[((luma + U_TO_GREEN[u] + V_TO_GREEN[v]) >> FIXED_SHIFT) + CLAMP_OFFSET]]++;
+                    blue[clamp[((luma + U_TO_BLUE[u]) >> FIXED_SHIFT) + CLAMP_OFFSET]]++;
+                }
+                count += x2 - x1 + 1;
+            } else {
+                for (; x <= x2; x += stride) {
+                    int luma = (0xFF & yuv[row + x]) << FIXED_SHIFT;
+                    int v = 0xFF & yuv[uvRow + (x & ~1)];
+                    int u = 0xFF & yuv[uvRow + (x & ~1) + 1];
+                    red[clamp[((luma + V_TO_RED[v]) >> FIXED_SHIFT) + CLAMP_OFFSET]]++;
+                    green[clamp[((luma + U_TO_GREEN[u] + V_TO_GREEN[v]) >> FIXED_SHIFT) + CLAMP_OFFSET]]++;
+                    blue[clamp[((luma + U_TO_BLUE[u]) >> FIXED_SHIFT) + CLAMP_OFFSET]]++;
+                    count++;
+                }
+            }
+        }
+        histogram.accumulate(count);
+    }
+
+    /**
+     * Add the statistics of a sample of the pixels of a rect area of a YUV420SPNV21 byte array,
+     * including sums of squares so {@link RoiStatistics#getStandardError()} tells how good the
+     * estimate is.
+     * <p/>
+     * {@link #SAMPLING_MODE_STRIDE} takes the top left pixel of every parameter x parameter cell.
+     * {@link #SAMPLING_MODE_JITTERED} takes one pixel at a random position in every cell, which
+     * removes the bias of a fixed grid over regular patterns. {@link #SAMPLING_MODE_BUDGET} picks
+     * the cell size so that a jittered grid takes about parameter pixels, and every pixel once the
+     * area is not larger than the budget.
+     * <p/>
+     * The standard error assumes random samples. A fixed stride over a regular pattern, such as
+     * stripes at a multiple of the stride, can be off by far more than it suggests.
+     *
+     * @param frame     {@link com.holoyolostudios.colorvision.colorlib.util.FrameDescriptor}
+     * @param yuv       byte array
+     * @param x1        {@link Integer}
+     * @param y1        {@link Integer}
+     * @param x2        {@link Integer}
+     * @param y2        {@link Integer}
+     * @param mode      {@link #SAMPLING_MODE_STRIDE}, {@link #SAMPLING_MODE_JITTERED} or {@link #SAMPLING_MODE_BUDGET}
+     * @param parameter {@link Integer} stride, or number of samples for {@link #SAMPLING_MODE_BUDGET}
+     * @param seed      {@link Integer} seed of the jitter, vary it from frame to frame
+     * @param stats     {@link com.holoyolostudios.colorvision.colorlib.util.RoiStatistics} to add to
+     */
+    public static void sampleStatistics(FrameDescriptor frame, byte[] yuv, int x1, int y1, int x2, int y2,
+                                        int mode, int parameter, int seed, RoiStatistics stats) {
+        int width = x2 - x1 + 1;
+        int height = y2 - y1;
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+        int stride = Math.max(1, parameter);
+        boolean jitter = mode != SAMPLING_MODE_STRIDE;
+        if (mode == SAMPLING_MODE_BUDGET) {
+            stride = (int) Math.ceil(Math.sqrt((double) width * height / Math.max(1, parameter)));
+        }
+        if (stride == 1) {
+            accumulateStatistics(frame, yuv, x1, y1, x2, y2, true, stats);
+            return;
+        }
+
+        final int yStride = frame.getYStride();
+        final int uvStride = frame.getUvStride();
+        final int uvOffset = frame.getUvOffset();
+        final int[] clamp = CLAMP;
+        int state = (seed == 0) ? 0x9E3779B9 : seed;
+        long count = 0;
+        long sumRed = 0;
+        long sumGreen = 0;
+        long sumBlue = 0;
+        long squaresRed = 0;
+        long squaresGreen = 0;
+        long squaresBlue = 0;
+        int minRed = 255;
+        int maxRed = 0;
+        int minGreen = 255;
+        int maxGreen = 0;
+        int minBlue = 255;
+        int maxBlue = 0;
+        for (int cellY = y1; cellY < y2; cellY += stride) {
+            int cellHeight = Math.min(stride, y2 - cellY);
+            for (int cellX = x1; cellX <= x2; cellX += stride) {
+                int x = cellX;
+                int y = cellY;
+                if (jitter) {
+                    // xorshift, plenty for spreading samples
+                    state ^= state << 13;
+                    state ^= state >>> 17;
+                    state ^= state << 5;
+                    x += (state & 0xFFFF) % Math.min(stride, x2 - cellX + 1);
+                    y += (state >>> 16) % cellHeight;
+                }
+                int vu = uvOffset + (y >> 1) * uvStride + (x & ~1);
+                int v = 0xFF & yuv[vu];
+                int u = 0xFF & yuv[vu + 1];
+                int luma = (0xFF & yuv[y * yStride + x]) << FIXED_SHIFT;
+                int r = clamp[((luma + V_TO_RED[v]) >> FIXED_SHIFT) + CLAMP_OFFSET];
+                int g = clamp[((luma + U_TO_GREEN[u] + V_TO_GREEN[v]) >> FIXED_SHIFT) + CLAMP_OFFSET];
+                int b = clamp[((luma + U_TO_BLUE[u]) >> FIXED_SHIFT) + CLAMP_OFFSET];
+                sumRed += r;
+                sumGreen += g;
+                sumBlue += b;
+                squaresRed += r * r;
+                squaresGreen += g * g;
+                squaresBlue += b * b;
+                minRed = (r < minRed) ? r : minRed;
+                maxRed = (r > maxRed) ? r : maxRed;
+                minGreen = (g < minGreen) ? g : minGreen;
+                maxGreen = (g > maxGreen) ? g : maxGreen;
+                minBlue = (b < minBlue) ? b : minBlue;
+                maxBlue = (b > maxBlue) ? b : maxBlue;
+                count++;
+            }
+        }
+        stats.accumulate((long) width * height, count, sumRed, sumGreen, sumBlue,
+                squaresRed, squaresGreen, squaresBlue);
+        stats.accumulateRange(minRed, maxRed, minGreen, maxGreen, minBlue, maxBlue);
+    }
+
+    /**
+     * Average Y, U and V over the area and convert the means once. Uses local sums rather than a
+     * {@link YuvStatistics} so the averaging calls stay allocation-free.
+     *
+     * @return {@link Integer} opaque pixel, or 0 if some pixel in the area could clamp and the
+     * exact mode has to be used
+     */
+    private static int getAverageColorYuv(FrameDescriptor frame, byte[] yuv, int x1, int y1, int x2, int y2) {
+        final int yStride = frame.getYStride();
+        final int uvStride = frame.getUvStride();
+        final int uvOffset = frame.getUvOffset();
+
+        // Luma, one sample per pixel
+        long sumY = 0;
+        int minY = 255;
+        int maxY = 0;
+        for (int y = y1; y < y2; y++) {
+            int row = y * yStride;
+            for (int x = x1; x <= x2; x++) {
+                int luma = 0xFF & yuv[row + x];
+                sumY += luma;
+                minY = (luma < minY) ? luma : minY;
+                maxY = (luma > maxY) ? luma : maxY;
+            }
+        }
+
+        // Chroma, one sample per 2x2 block weighted by how many of its pixels are in the area
+        long sumU = 0;
+        long sumV = 0;
+        int minU = 255;
+        int maxU = 0;
+        int minV = 255;
+        int maxV = 0;
+        int firstBlockX = x1 >> 1;
+        int lastBlockX = x2 >> 1;
+        for (int blockY = y1 >> 1; blockY <= (y2 - 1) >> 1; blockY++) {
+            int rowWeight = Math.min(y2, (blockY << 1) + 2) - Math.max(y1, blockY << 1);
+            int row = uvOffset + blockY * uvStride;
+            for (int blockX = firstBlockX; blockX <= lastBlockX; blockX++) {
+                int colWeight = Math.min(x2 + 1, (blockX << 1) + 2) - Math.max(x1, blockX << 1);
+                int weight = rowWeight * colWeight;
+                int v = 0xFF & yuv[row + (blockX << 1)];
+                int u = 0xFF & yuv[row + (blockX << 1) + 1];
+                sumU += weight * u;
+                sumV += weight * v;
+                minU = (u < minU) ? u : minU;
+                maxU = (u > maxU) ? u : maxU;
+                minV = (v < minV) ? v : minV;
+                maxV = (v > maxV) ? v : maxV;
+            }
+        }
+
+        // Bail out if any pixel could fall outside [0, 255] on any channel
+        if (!isInGamut(minY, maxY, minU, maxU, minV, maxV)) {
+            return 0;
+        }
+
+        // Convert the means once
+        return getPixelFromYuvSums(sumY, sumU, sumV, (x2 - x1 + 1) * (y2 - y1));
+    }
+
+    /**
+     * Gather Y, U and V statistics of a rect area of a YUV420SPNV21 byte array and add them to
+     * the given statistics, the {@link #AVERAGE_MODE_YUV} counterpart of
+     * {@link #accumulateStatistics}. No pixel is converted to RGB; chroma is read once per 2x2
+     * block and weighted by how many of its pixels are in the area.
+     *
+     * @param frame       {@link com.holoyolostudios.colorvision.colorlib.util.FrameDescriptor}
+     * @param yuv         byte array
+     * @param x1          {@link Integer}
+     * @param y1          {@link Integer}
+     * @param x2          {@link Integer}
+     * @param y2          {@link Integer}
+     * @param withSquares {@link boolean} whether to gather sums of squares for the variance
+     * @param stats       {@link com.holoyolostudios.colorvision.colorlib.util.YuvStatistics} to add to
+     */
+    public static void accumulateYuvStatistics(FrameDescriptor frame, byte[] yuv, int x1, int y1, int x2, int y2,
+                                               boolean withSquares, YuvStatistics stats) {
+        final int yStride = frame.getYStride();
+        final int uvStride = frame.getUvStride();
+        final int uvOffset = frame.getUvOffset();
+
+        // Luma, one sample per pixel
+        long sumY = 0;
+        long squaresY = 0;
+        int minY = 255;
+        int maxY = 0;
+        for (int y = y1; y < y2; y++) {
+            int row = y * yStride;
+            if (withSquares) {
+                for (int x = x1; x <= x2; x++) {
+                    int luma = 0xFF & yuv[row + x];
+                    sumY += luma;
+                    squaresY += luma * luma;
+                    minY = (luma < minY) ? luma : minY;
+                    maxY = (luma > maxY) ? luma : maxY;
+                }
+            } else {
+                for (int x = x1; x <= x2; x++) {
+                    int luma = 0xFF & yuv[row + x];
+                    sumY += luma;
+                    minY = (luma < minY) ? luma : minY;
+                    maxY = (luma > maxY) ? luma : maxY;
+                }
+            }
+        }
+
+        // Chroma, one sample per 2x2 block weighted by how many of its pixels are in the area.
+        // There are a quarter as many blocks as pixels, so the squares are not worth a second loop.
+        long sumU = 0;
+        long sumV = 0;
+        long squaresU = 0;
+        long squaresV = 0;
+        int minU = 255;
+        int maxU = 0;
+        int minV = 255;
+        int maxV = 0;
+        int firstBlockX = x1 >> 1;
+        int lastBlockX = x2 >> 1;
+        for (int blockY = y1 >> 1; blockY <= (y2 - 1) >> 1; blockY++) {
+            int rowWeight = Math.min(y2, (blockY << 1) + 2) - Math.max(y1, blockY << 1);
+            int row = uvOffset + blockY * uvStride;
+            for (int blockX = firstBlockX; blockX <= lastBlockX; blockX++) {
+                int colWeight = Math.min(x2 + 1, (blockX << 1) + 2) - Math.max(x1, blockX << 1);
+                int weight = rowWeight * colWeight;
+                int v = 0xFF & yuv[row + (blockX << 1)];
+                int u = 0xFF & yuv[row + (blockX << 1) + 1];
+                sumU += weight * u;
+                sumV += weight * v;
+                if (withSquares) {
+                    squaresU += weight * u * u;
+                    squaresV += weight * v * v;
+                }
+                minU = (u < minU) ? u : minU;
+                maxU = (u > maxU) ? u : maxU;
+                minV = (v < minV) ? v : minV;
+                maxV = (v > maxV) ? v : maxV;
+            }
+        }
+        stats.accumulate((long) (x2 - x1 + 1) * (y2 - y1), sumY, sumU, sumV, squaresY, squaresU, squaresV);
+        stats.accumulateRange(minY, maxY, minU, maxU, minV, maxV);
+    }
+
+    /**
+     * Check that no pixel with Y, U and V within the given ranges falls outside [0, 255] on any
+     * channel when converted
+     */
+    static boolean isInGamut(int minY, int maxY, int minU, int maxU, int minV, int maxV) {
+        int lumaMin = minY << FIXED_SHIFT;
+        int lumaMax = maxY << FIXED_SHIFT;
+        return ((lumaMin + V_TO_RED[minV]) >> FIXED_SHIFT) >= 0
+                && ((lumaMax + V_TO_RED[maxV]) >> FIXED_SHIFT) <= 255
+                && ((lumaMin + U_TO_GREEN[maxU] + V_TO_GREEN[maxV]) >> FIXED_SHIFT) >= 0
+                && ((lumaMax + U_TO_GREEN[minU] + V_TO_GREEN[minV]) >> FIXED_SHIFT) <= 255
+                && ((lumaMin + U_TO_BLUE[minU]) >> FIXED_SHIFT) >= 0
+                && ((lumaMax + U_TO_BLUE[maxU]) >> FIXED_SHIFT) <= 255;
+    }
+
+    /**
+     * Convert summed Y, U and V values of an area to the RGB color of their means
+     *
+     * @param sumY  {@link long}
+     * @param sumU  {@link long}
+     * @param sumV  {@link long}
+     * @param count {@link int} number of pixels summed
+     * @return {@link com.holoyolostudios.colorvision.colorlib.util.ColorAnalyzerUtil.RGBColor}
+     */
+    static RGBColor getColorFromYuvSums(long sumY, long sumU, long sumV, int count) {
+        RGBColor color = new RGBColor(0, 0, 0);
+        color.setPixel(getPixelFromYuvSums(sumY, sumU, sumV, count));
+        return color;
+    }
+
+    /**
+     * Convert summed Y, U and V values of an area to the packed opaque RGB pixel of their means
+     *
+     * @param sumY  {@link long}
+     * @param sumU  {@link long}
+     * @param sumV  {@link long}
+     * @param count {@link int} number of pixels summed
+     * @return {@link int}
+     */
+    static int getPixelFromYuvSums(long sumY, long sumU, long sumV, int count) {
+        float meanY = (float) sumY / count;
+        float meanU = (float) sumU / count - 128;
+        float meanV = (float) sumV / count - 128;
+        int r = (int) (meanY + 1.402f * meanV);
+        int g = (int) (meanY - 0.344f * meanU - 0.714f * meanV);
+        int b = (int) (meanY + 1.772f * meanU);
+        return Color.rgb(CLAMP[r + CLAMP_OFFSET], CLAMP[g + CLAMP_OFFSET], CLAMP[b + CLAMP_OFFSET]);
+    }
+
+    /**
+     * Gets the RGB pixel at the given position in a YUV420SPNV21 byte array using integer math only.
+     * Each channel is within 1 of {@link #getColorAtPoint(FrameDescriptor, byte[], int, int)}.
+     *
+     * @param frame {@link com.holoyolostudios.colorvision.colorlib.util.FrameDescriptor}
+     * @param yuv   byte array
+     * @param x     {@link Integer}
+     * @param y     {@link Integer}
+     * @return {@link Integer}
+     */
+    public static int getColorAtPointFixed(FrameDescriptor frame, byte[] yuv, int x, int y) {
+        int i = frame.getVuIndex(x, y);
+        int luma = (0xFF & yuv[frame.getYIndex(x, y)]) << FIXED_SHIFT;
+        int u = 0xFF & yuv[(i + 1)];
+        int v = 0xFF & yuv[i];
+        int r = CLAMP[((luma + V_TO_RED[v]) >> FIXED_SHIFT) + CLAMP_OFFSET];
+        int g = CLAMP[((luma + U_TO_GREEN[u] + V_TO_GREEN[v]) >> FIXED_SHIFT) + CLAMP_OFFSET];
+        int b = CLAMP[((luma + U_TO_BLUE[u]) >> FIXED_SHIFT) + CLAMP_OFFSET];
+        return Color.rgb(r, g, b);
     }
 
     /**
      * Gets the RGB pixel at the given position in a YUV420SPNV21 byte array
      *
-     * @param yuv byte array
-     * @param x   {@link Integer}
-     * @param y   {@link Integer}
+     * @param frame {@link com.holoyolostudios.colorvision.colorlib.util.FrameDescriptor}
+     * @param yuv   byte array
+     * @param x     {@link Integer}
+     * @param y     {@link Integer}
      * @return {@link Integer}
      */
-    public static int getColorAtPoint(byte[] yuv, int x, int y) {
-        int i = (FRAME_WIDTH * FRAME_HEIGHT) + FRAME_WIDTH * (y >> 1) + (x & 0xFFFFFFFE);
-        int j = 0xFF & yuv[x + y * FRAME_WIDTH];
+    public static int getColorAtPoint(FrameDescriptor frame, byte[] yuv, int x, int y) {
+        int i = frame.getVuIndex(x, y);
+        int j = 0xFF & yuv[frame.getYIndex(x, y)];
         int k = 0xFF & yuv[(i + 1)];
         int m = 0xFF & yuv[i];
         int n = k - 128;
@@ -120,7 +978,6 @@ public class ColorAnalyzerUtil {
         private int mRed = 0x00000000;
         private int mGreen = 0x00000000;
         private int mBlue = 0x00000000;
-        private String mColorName = null;
         private String mHexCode = null;
 
         /**
@@ -149,6 +1006,42 @@ public class ColorAnalyzerUtil {
             mBlue = b;
         }
 
+        /**
+         * Overwrite the color, keeping the alpha
+         *
+         * @param r {@link Integer}
+         * @param g {@link Integer}
+         * @param b {@link Integer}
+         */
+        public void set(int r, int g, int b) {
+            set(mAlpha, r, g, b);
+        }
+
+        /**
+         * Overwrite the color, so one instance can be reused across frames
+         *
+         * @param a {@link Integer}
+         * @param r {@link Integer}
+         * @param g {@link Integer}
+         * @param b {@link Integer}
+         */
+        public void set(int a, int r, int g, int b) {
+            mAlpha = a;
+            mRed = r;
+            mGreen = g;
+            mBlue = b;
+            mHexCode = null;
+        }
+
+        /**
+         * Overwrite the color with a packed ARGB pixel
+         *
+         * @param pixel {@link Integer}
+         */
+        public void setPixel(int pixel) {
+            set(Color.alpha(pixel), Color.red(pixel), Color.green(pixel), Color.blue(pixel));
+        }
+
         /**
          * Get data of a single pixel
          *
@@ -198,9 +1091,12 @@ public class ColorAnalyzerUtil {
          * Get the color name
          *
          * @return {@link String}
+         * @deprecated Colors are never named, use
+         * {@link com.holoyolostudios.colorvision.colorlib.colors.ColorNameCache#getColorName(int, int, int)}
          */
+        @Deprecated
         public String getName() {
-            return mColorName;
+            return null;
         }
 
         /**
@@ -210,7 +1106,13 @@ public class ColorAnalyzerUtil {
          */
         public String getHexCode() {
             if (mHexCode == null) {
-                mHexCode = String.format("%06x", getPixel());
+                int pixel = getPixel();
+                char[] chars = new char[8];
+                for (int i = chars.length - 1; i >= 0; i--) {
+                    chars[i] = Character.forDigit(pixel & 0xF, 16);
+                    pixel >>>= 4;
+                }
+                mHexCode = new String(chars);
             }
             return mHexCode;
         }
@@ -0,0 +1,469 @@
+/*
+ * Copyright 2014 Martin Brabham
+ * Copyright 2014 Daniel Velazco
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+package com.holoyolostudios.colorvision.colorlib.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * FrameAnalyzer
+ * <p/>
+ * Dedicated analysis stage for camera preview frames. {@link #submit} copies the rows of the
+ * area to analyze out of the camera buffer and returns right away, so the buffer can go back to
+ * the camera immediately. Frames are handed to the analysis thread through a lock-free
+ * single-slot triple buffer: the camera thread, the slot and the analysis thread each own one
+ * frame, and publishing swaps the camera thread's frame into the slot. A frame still unread in
+ * the slot when the next one is published is dropped instead of queued, so the analysis thread
+ * always works on the latest frame.
+ * <p/>
+ * Before averaging, a {@link FrameChangeDetector} compares the area against the last frame that
+ * was averaged. Frames where it did not change are skipped and the listener is not called, so
+ * the previous color and name stay in place. An {@link AnalysisRateGovernor} then decides how
+ * long to wait before the next frame and how finely to sample the area; frames arriving while
+ * the analysis thread waits replace each other in the slot and count as dropped. Large areas
+ * analyzed at full resolution are split into row bands over the cores by a
+ * {@link ParallelRoiAnalyzer} owned by the analysis thread.
+ * <p/>
+ *
+ * @author Martin Brabham
+ * @author Daniel Velazco
+ */
+public class FrameAnalyzer {
+
+    // Constants
+    public static final long STOP_TIMEOUT_MILLIS = 500;
+
+    /**
+     * Receives analysis results, called on the analysis thread
+     */
+    public interface OnFrameAnalyzedListener {
+
+        /**
+         * Called when a frame has been analyzed. The color is reused for the next frame, copy it
+         * to keep it past this call.
+         *
+         * @param color {@link com.holoyolostudios.colorvision.colorlib.util.ColorAnalyzerUtil.RGBColor}
+         */
+        public void onFrameAnalyzed(ColorAnalyzerUtil.RGBColor color);
+
+    }
+
+    // Members
+    private final OnFrameAnalyzedListener mListener;
+    private final AtomicReference<Frame> mSlot = new AtomicReference<Frame>(new Frame());
+    private final AtomicLong mFramesSubmitted = new AtomicLong();
+    private final AtomicLong mFramesAnalyzed = new AtomicLong();
+    private final AtomicLong mFramesDropped = new AtomicLong();
+    private final AtomicLong mFramesSkipped = new AtomicLong();
+    private volatile int mAverageMode = ColorAnalyzerUtil.AVERAGE_MODE_EXACT;
+    private volatile int mChangeThreshold = FrameChangeDetector.DEFAULT_THRESHOLD;
+    private volatile int mSampleBudget = 0;
+    private volatile double mStandardError = 0;
+    private volatile boolean mComputeUniformity = false;
+    private volatile double mUniformity = Double.NaN;
+    private volatile Thread mThread = null;
+    private Thread mStoppedThread = null;
+    private volatile boolean mWaiting = false;
+    private final AnalysisRateGovernor mGovernor = new AnalysisRateGovernor();
+
+    // Owned by the submitting thread
+    private Frame mBack = new Frame();
+
+    /**
+     * Constructor
+     *
+     * @param listener {@link com.holoyolostudios.colorvision.colorlib.util.FrameAnalyzer.OnFrameAnalyzedListener}
+     */
+    public FrameAnalyzer(OnFrameAnalyzedListener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Set the averaging mode passed to
+     * {@link ColorAnalyzerUtil#getAverageColor(FrameDescriptor, byte[], int, int, int, int, int)}.
+     * The robust modes also replace the mean of a sample budget or of the uniformity statistics,
+     * using reused histograms at the governor's stride.
+     *
+     * @param averageMode {@link Integer}
+     */
+    public void setAverageMode(int averageMode) {
+        mAverageMode = averageMode;
+    }
+
+    /**
+     * Set the change threshold of the {@link FrameChangeDetector}, a negative value averages
+     * every frame
+     *
+     * @param changeThreshold {@link Integer}
+     */
+    public void setChangeThreshold(int changeThreshold) {
+        mChangeThreshold = changeThreshold;
+    }
+
+    /**
+     * Set how many pixels to sample per frame. A positive budget averages a jittered sample of
+     * the area, see {@link ColorAnalyzerUtil#SAMPLING_MODE_BUDGET}, instead of the governor's
+     * stride and the averaging mode. 0 averages the whole area.
+     *
+     * @param sampleBudget {@link Integer}
+     */
+    public void setSampleBudget(int sampleBudget) {
+        mSampleBudget = sampleBudget;
+    }
+
+    /**
+     * Get the standard error of the last color, in 8 bit levels, 0 if every pixel was used
+     *
+     * @return {@link double}
+     */
+    public double getStandardError() {
+        return mStandardError;
+    }
+
+    /**
+     * Gather the variance along with the mean so {@link #getUniformity()} is available. With
+     * {@link ColorAnalyzerUtil#AVERAGE_MODE_YUV} at a stride of 1 the variance is gathered in the
+     * same pass over Y, U and V, see {@link YuvStatistics#getUniformity()}. Otherwise the area is
+     * sampled on a jittered grid at the governor's stride, converting every sample exactly.
+     *
+     * @param computeUniformity {@link boolean}
+     */
+    public void setComputeUniformity(boolean computeUniformity) {
+        mComputeUniformity = computeUniformity;
+    }
+
+    /**
+     * Get the uniformity of the area of the last color, see {@link RoiStatistics#getUniformity()}.
+     * Called from the listener it belongs to the color passed in.
+     *
+     * @return {@link double} NaN unless a sample budget is set or uniformity is computed
+     */
+    public double getUniformity() {
+        return mUniformity;
+    }
+
+    /**
+     * Get the governor pacing the analysis, for configuration and metrics
+     *
+     * @return {@link com.holoyolostudios.colorvision.colorlib.util.AnalysisRateGovernor}
+     */
+    public AnalysisRateGovernor getGovernor() {
+        return mGovernor;
+    }
+
+    /**
+     * Start the analysis thread, does nothing if it is already running. If the previous thread
+     * outlived {@link #stop()}, waits for it to finish first since both would share the slot and
+     * the governor.
+     */
+    public synchronized void start() {
+        if (mThread != null) {
+            return;
+        }
+        if (mStoppedThread != null && mStoppedThread != Thread.currentThread()) {
+            join(mStoppedThread, 0);
+        }
+        mStoppedThread = null;
+        mThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                analyzeFrames();
+            }
+        }, "FrameAnalyzer");
+        mThread.start();
+    }
+
+    /**
+     * Stop the analysis thread and wait up to {@link #STOP_TIMEOUT_MILLIS} for it to finish the
+     * frame it is analyzing, so the listener is not called after this returns. Called from the
+     * listener itself, it returns right away.
+     */
+    public synchronized void stop() {
+        Thread thread = mThread;
+        mThread = null;
+        if (thread == null) {
+            return;
+        }
+        LockSupport.unpark(thread);
+        if (thread != Thread.currentThread()) {
+            join(thread, STOP_TIMEOUT_MILLIS);
+        }
+        mStoppedThread = thread.isAlive() ? thread : null;
+    }
+
+    /**
+     * Wait for a thread to finish, 0 waits without limit. An interrupt does not cut the wait
+     * short, it is restored afterwards.
+     */
+    private static void join(Thread thread, long timeoutMillis) {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        boolean interrupted = false;
+        while (thread.isAlive()) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (timeoutMillis > 0 && remaining <= 0) {
+                break;
+            }
+            try {
+                thread.join((timeoutMillis > 0) ? remaining : 0);
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Copy the area to analyze out of a camera buffer and hand it to the analysis thread.
+     * Only one thread may submit frames. The buffer is not referenced after this returns.
+     *
+     * @param frame {@link com.holoyolostudios.colorvision.colorlib.util.FrameDescriptor}
+     * @param yuv   byte array
+     * @param x1    {@link Integer}
+     * @param y1    {@link Integer}
+     * @param x2    {@link Integer}
+     * @param y2    {@link Integer}
+     */
+    public void submit(FrameDescriptor frame, byte[] yuv, int x1, int y1, int x2, int y2) {
+        mFramesSubmitted.incrementAndGet();
+        Frame back = mBack;
+        back.copy(frame, yuv, x1, y1, x2, y2);
+        back.mFresh = true;
+
+        // Publish, the frame we get back is either spent or a frame nobody got to
+        back = mSlot.getAndSet(back);
+        if (back.mFresh) {
+            back.mFresh = false;
+            mFramesDropped.incrementAndGet();
+        }
+        mBack = back;
+
+        // No need to wake the analysis thread while the governor holds it back
+        Thread thread = mThread;
+        if (thread != null && !mWaiting) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * Get the number of frames submitted
+     *
+     * @return {@link long}
+     */
+    public long getFramesSubmitted() {
+        return mFramesSubmitted.get();
+    }
+
+    /**
+     * Get the number of frames analyzed, including frames skipped as unchanged
+     *
+     * @return {@link long}
+     */
+    public long getFramesAnalyzed() {
+        return mFramesAnalyzed.get();
+    }
+
+    /**
+     * Get the number of frames replaced by a newer frame before they could be analyzed
+     *
+     * @return {@link long}
+     */
+    public long getFramesDropped() {
+        return mFramesDropped.get();
+    }
+
+    /**
+     * Get the number of analyzed frames skipped because the area did not change
+     *
+     * @return {@link long}
+     */
+    public long getFramesSkipped() {
+        return mFramesSkipped.get();
+    }
+
+    /**
+     * Get the fraction of analyzed frames skipped because the area did not change
+     *
+     * @return {@link double}
+     */
+    public double getSkipRate() {
+        long analyzed = mFramesAnalyzed.get();
+        return (analyzed == 0) ? 0 : (double) mFramesSkipped.get() / analyzed;
+    }
+
+    /**
+     * Analysis loop, takes the latest frame from the slot or parks until one is published
+     */
+    private void analyzeFrames() {
+        Thread self = Thread.currentThread();
+        Frame front = new Frame();
+        ColorAnalyzerUtil.RGBColor color = new ColorAnalyzerUtil.RGBColor(0, 0, 0);
+        FrameChangeDetector detector = new FrameChangeDetector();
+        AnalysisRateGovernor governor = mGovernor;
+        governor.reset();
+        RoiStatistics stats = new RoiStatistics();
+        YuvStatistics yuvStats = new YuvStatistics();
+        RoiHistogram histogram = new RoiHistogram();
+        ParallelRoiAnalyzer parallel = new ParallelRoiAnalyzer();
+        int seed = 1;
+        int lastMode = -1;
+        try {
+            while (mThread == self) {
+                long start = System.nanoTime();
+                long delay = governor.getDelay(start);
+                if (delay > 0) {
+                    mWaiting = true;
+                    LockSupport.parkNanos(this, delay);
+                    mWaiting = false;
+                    continue;
+                }
+
+                Frame frame = mSlot.getAndSet(front);
+                front = frame;
+                if (!frame.mFresh) {
+                    LockSupport.park(this);
+                    continue;
+                }
+
+                // A new mode changes the result even if the frame does not
+                int mode = mAverageMode;
+                int threshold = mChangeThreshold;
+                if (mode != lastMode || threshold < 0) {
+                    detector.reset();
+                    lastMode = mode;
+                }
+                if (threshold >= 0) {
+                    detector.setThreshold(threshold);
+                }
+                boolean changed = detector.hasChanged(frame.mDescriptor, frame.mData,
+                        frame.mX1, frame.mY1, frame.mX2, frame.mY2);
+                int budget = mSampleBudget;
+                boolean robust = mode == ColorAnalyzerUtil.AVERAGE_MODE_MEDIAN
+                        || mode == ColorAnalyzerUtil.AVERAGE_MODE_TRIMMED;
+                if (!changed) {
+                    mFramesSkipped.incrementAndGet();
+                } else if (budget > 0) {
+                    stats.reset(true);
+                    ColorAnalyzerUtil.sampleStatistics(frame.mDescriptor, frame.mData, frame.mX1, frame.mY1,
+                            frame.mX2, frame.mY2, ColorAnalyzerUtil.SAMPLING_MODE_BUDGET, budget, seed++, stats);
+                    color.setPixel(stats.getAveragePixel());
+                    mStandardError = stats.getStandardError();
+                    mUniformity = stats.getUniformity();
+                } else if (mode == ColorAnalyzerUtil.AVERAGE_MODE_YUV && governor.getStride() <= 1
+                        && averageYuv(frame, mComputeUniformity, yuvStats)) {
+                    color.setPixel(yuvStats.getAveragePixel());
+                    mStandardError = 0;
+                    mUniformity = mComputeUniformity ? yuvStats.getUniformity() : Double.NaN;
+                } else if (mComputeUniformity) {
+                    if (governor.getStride() <= 1) {
+                        parallel.computeStatistics(frame.mDescriptor, frame.mData, frame.mX1, frame.mY1,
+                                frame.mX2, frame.mY2, true, stats);
+                    } else {
+                        stats.reset(true);
+                        ColorAnalyzerUtil.sampleStatistics(frame.mDescriptor, frame.mData, frame.mX1, frame.mY1,
+                                frame.mX2, frame.mY2, ColorAnalyzerUtil.SAMPLING_MODE_JITTERED, governor.getStride(),
+                                seed++, stats);
+                    }
+                    color.setPixel(stats.getAveragePixel());
+                    mStandardError = stats.getStandardError();
+                    mUniformity = stats.getUniformity();
+                } else if (!robust && governor.getStride() <= 1
+                        && parallel.getBandCount(frame.mX1, frame.mY1, frame.mX2, frame.mY2) > 1) {
+                    // Large areas at full resolution are split across cores, the truncated mean is
+                    // the same as the exact average
+                    parallel.computeStatistics(frame.mDescriptor, frame.mData, frame.mX1, frame.mY1,
+                            frame.mX2, frame.mY2, false, stats);
+                    color.setPixel(stats.getAveragePixel());
+                    mStandardError = 0;
+                    mUniformity = Double.NaN;
+                } else if (!robust) {
+                    // The YUV mode either was tried above or does not apply at this stride
+                    color.setPixel(ColorAnalyzerUtil.getAverageColorPixel(frame.mDescriptor, frame.mData,
+                            frame.mX1, frame.mY1, frame.mX2, frame.mY2, ColorAnalyzerUtil.AVERAGE_MODE_EXACT,
+                            governor.getStride()));
+                    mStandardError = 0;
+                    mUniformity = Double.NaN;
+                } else {
+                    mStandardError = 0;
+                    mUniformity = Double.NaN;
+                }
+                if (changed && robust) {
+                    // Replaces the sampled mean, the spread gathered with it still describes the area
+                    color.setPixel(ColorAnalyzerUtil.getRobustColorPixel(frame.mDescriptor, frame.mData,
+                            frame.mX1, frame.mY1, frame.mX2, frame.mY2, mode, governor.getStride(), histogram));
+                }
+                frame.mFresh = false;
+                mFramesAnalyzed.incrementAndGet();
+                governor.onFrameAnalyzed(start, System.nanoTime() - start, changed);
+                if (changed) {
+                    mListener.onFrameAnalyzed(color);
+                }
+            }
+        } finally {
+            parallel.shutdown();
+        }
+    }
+
+    /**
+     * Gather the YUV statistics of the frame's area, false if some pixel could clamp and the
+     * exact mode has to be used
+     */
+    private static boolean averageYuv(Frame frame, boolean withSquares, YuvStatistics stats) {
+        stats.reset(withSquares);
+        ColorAnalyzerUtil.accumulateYuvStatistics(frame.mDescriptor, frame.mData, frame.mX1, frame.mY1,
+                frame.mX2, frame.mY2, withSquares, stats);
+        return stats.isInGamut();
+    }
+
+    /**
+     * Copy of the part of a camera frame needed for analysis
+     */
+    private static class Frame {
+
+        // Members
+        private FrameDescriptor mDescriptor = null;
+        private byte[] mData = null;
+        private int mX1, mY1, mX2, mY2;
+        private boolean mFresh = false;
+
+        /**
+         * Copy the Y rows and VU rows covering the area, at their original offsets
+         */
+        void copy(FrameDescriptor frame, byte[] yuv, int x1, int y1, int x2, int y2) {
+            if (mData == null || mData.length < frame.getBufferSize()) {
+                mData = new byte[frame.getBufferSize()];
+            }
+            mDescriptor = frame;
+            mX1 = x1;
+            mY1 = y1;
+            mX2 = x2;
+            mY2 = y2;
+            if (y2 <= y1) {
+                return;
+            }
+            int yStart = frame.getYIndex(0, y1);
+            System.arraycopy(yuv, yStart, mData, yStart, frame.getYIndex(0, y2) - yStart);
+            int uvStart = frame.getVuIndex(0, y1);
+            int uvEnd = frame.getVuIndex(0, y2 - 1) + frame.getUvStride();
+            System.arraycopy(yuv, uvStart, mData, uvStart, Math.min(uvEnd, yuv.length) - uvStart);
+        }
+
+    }
+
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2014 Martin Brabham
+ * Copyright 2014 Daniel Velazco
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+package com.holoyolostudios.colorvision.colorlib.util;
+
+/**
+ * FrameChangeDetector
+ * <p/>
+ * Cheap test for whether the area to analyze changed since the last frame that was analyzed.
+ * Y, U and V are sampled on a sparse {@link #GRID_SIZE} x {@link #GRID_SIZE} grid over the area
+ * and compared against the samples of the reference frame in two ways:
+ * <ul>
+ * <li>the mean of each plane, which tracks the average color while camera noise mostly cancels
+ * out, must not move by more than the threshold</li>
+ * <li>the mean absolute difference of each plane, which catches movement over a textured
+ * surface with a similar average, must not exceed {@link #MOTION_FACTOR} times the threshold</li>
+ * </ul>
+ * The reference is only replaced when a change is reported, so slow drift adds up until it
+ * crosses the threshold instead of slipping through one frame at a time.
+ * <p/>
+ * Not thread safe, use one detector per analysis thread.
+ * <p/>
+ *
+ * @author Martin Brabham
+ * @author Daniel Velazco
+ */
+public class FrameChangeDetector {
+
+    // Constants
+    public static final int GRID_SIZE = 8;
+    public static final int DEFAULT_THRESHOLD = 2;
+    public static final int MOTION_FACTOR = 4;
+    private static final int SAMPLES = GRID_SIZE * GRID_SIZE;
+
+    // Members
+    private final int[] mSamples = new int[3 * SAMPLES];
+    private final int[] mReference = new int[3 * SAMPLES];
+    private boolean mHasReference = false;
+    private FrameDescriptor mFrame = null;
+    private int mX1, mY1, mX2, mY2;
+    private int mThreshold;
+
+    /**
+     * Constructor using {@link #DEFAULT_THRESHOLD}
+     */
+    public FrameChangeDetector() {
+        this(DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param threshold {@link Integer} largest change of a plane mean, in 8 bit levels, still
+     *                  treated as unchanged
+     */
+    public FrameChangeDetector(int threshold) {
+        setThreshold(threshold);
+    }
+
+    /**
+     * Set the largest change of a plane mean, in 8 bit levels, still treated as unchanged
+     *
+     * @param threshold {@link Integer}
+     */
+    public void setThreshold(int threshold) {
+        if (threshold < 0) {
+            throw new IllegalArgumentException("Threshold must not be negative.");
+        }
+        mThreshold = threshold;
+    }
+
+    /**
+     * Get the threshold
+     *
+     * @return {@link Integer}
+     */
+    public int getThreshold() {
+        return mThreshold;
+    }
+
+    /**
+     * Forget the reference frame, the next frame is reported as changed
+     */
+    public void reset() {
+        mHasReference = false;
+        mFrame = null;
+    }
+
+    /**
+     * Check whether the area changed since the last frame reported as changed. A frame reported
+     * as changed becomes the new reference. A different frame layout or area always counts as a
+     * change.
+     *
+     * @param frame {@link com.holoyolostudios.colorvision.colorlib.util.FrameDescriptor}
+     * @param yuv   byte array
+     * @param x1    {@link Integer}
+     * @param y1    {@link Integer}
+     * @param x2    {@link Integer} inclusive
+     * @param y2    {@link Integer} exclusive
+     * @return {@link Boolean}
+     */
+    public boolean hasChanged(FrameDescriptor frame, byte[] yuv, int x1, int y1, int x2, int y2) {
+        final int[] samples = mSamples;
+        int width = x2 - x1 + 1;
+        int height = y2 - y1;
+        if (width <= 0 || height <= 0) {
+            return true;
+        }
+
+        // Sample the center of each grid cell
+        int n = 0;
+        for (int row = 0; row < GRID_SIZE; row++) {
+            int y = y1 + (height * (2 * row + 1)) / (2 * GRID_SIZE);
+            for (int col = 0; col < GRID_SIZE; col++) {
+                int x = x1 + (width * (2 * col + 1)) / (2 * GRID_SIZE);
+                int vu = frame.getVuIndex(x, y);
+                samples[n] = 0xFF & yuv[frame.getYIndex(x, y)];
+                samples[n + SAMPLES] = 0xFF & yuv[vu + 1];
+                samples[n + 2 * SAMPLES] = 0xFF & yuv[vu];
+                n++;
+            }
+        }
+
+        boolean changed = !mHasReference || !frame.equals(mFrame)
+                || x1 != mX1 || y1 != mY1 || x2 != mX2 || y2 != mY2
+                || planeChanged(0) || planeChanged(SAMPLES) || planeChanged(2 * SAMPLES);
+        if (changed) {
+            System.arraycopy(samples, 0, mReference, 0, samples.length);
+            mHasReference = true;
+            mFrame = frame;
+            mX1 = x1;
+            mY1 = y1;
+            mX2 = x2;
+            mY2 = y2;
+        }
+        return changed;
+    }
+
+    /**
+     * Compare one plane of the samples against the reference, both tests work on sums to stay
+     * in integers
+     */
+    private boolean planeChanged(int offset) {
+        int delta = 0;
+        int absolute = 0;
+        for (int i = offset; i < offset + SAMPLES; i++) {
+            int d = mSamples[i] - mReference[i];
+            delta += d;
+            absolute += (d < 0) ? -d : d;
+        }
+        int limit = mThreshold * SAMPLES;
+        return delta > limit || -delta > limit || absolute > MOTION_FACTOR * limit;
+    }
+
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2014 Martin Brabham
+ * Copyright 2014 Daniel Velazco
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+package com.holoyolostudios.colorvision.colorlib.util;
+
+/**
+ * FrameDescriptor
+ * <p/>
+ * Immutable layout of a YUV420SPNV21 frame: size, plane strides and the offset of the
+ * interleaved VU plane. Analysis methods take a descriptor instead of reading shared state,
+ * so frames of different sizes can be analyzed concurrently.
+ * <p/>
+ *
+ * @author Martin Brabham
+ * @author Daniel Velazco
+ */
+public final class FrameDescriptor {
+
+    // Members
+    private final int mWidth;
+    private final int mHeight;
+    private final int mYStride;
+    private final int mUvStride;
+    private final int mUvOffset;
+    private final int mBufferSize;
+
+    /**
+     * Constructor for a tightly packed frame, as delivered by the camera preview
+     *
+     * @param width  {@link Integer}
+     * @param height {@link Integer}
+     */
+    public FrameDescriptor(int width, int height) {
+        this(width, height, width, width, width * height);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param width    {@link Integer}
+     * @param height   {@link Integer}
+     * @param yStride  {@link Integer} bytes between the start of two rows of the Y plane
+     * @param uvStride {@link Integer} bytes between the start of two rows of the VU plane
+     * @param uvOffset {@link Integer} offset of the VU plane in the buffer
+     */
+    public FrameDescriptor(int width, int height, int yStride, int uvStride, int uvOffset) {
+        if (width <= 0 || height <= 0 || yStride < width || uvStride < width || uvOffset < yStride * height) {
+            throw new IllegalArgumentException("Invalid frame layout: " + width + "x" + height);
+        }
+        mWidth = width;
+        mHeight = height;
+        mYStride = yStride;
+        mUvStride = uvStride;
+        mUvOffset = uvOffset;
+        mBufferSize = uvOffset + uvStride * ((height + 1) / 2);
+    }
+
+    /**
+     * Get the width of the frame
+     *
+     * @return {@link Integer}
+     */
+    public int getWidth() {
+        return mWidth;
+    }
+
+    /**
+     * Get the height of the frame
+     *
+     * @return {@link Integer}
+     */
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * Get the stride of the Y plane
+     *
+     * @return {@link Integer}
+     */
+    public int getYStride() {
+        return mYStride;
+    }
+
+    /**
+     * Get the stride of the VU plane
+     *
+     * @return {@link Integer}
+     */
+    public int getUvStride() {
+        return mUvStride;
+    }
+
+    /**
+     * Get the offset of the VU plane
+     *
+     * @return {@link Integer}
+     */
+    public int getUvOffset() {
+        return mUvOffset;
+    }
+
+    /**
+     * Get the minimum size of a buffer holding this frame
+     *
+     * @return {@link Integer}
+     */
+    public int getBufferSize() {
+        return mBufferSize;
+    }
+
+    /**
+     * Get the index of the Y sample of a pixel
+     *
+     * @param x {@link Integer}
+     * @param y {@link Integer}
+     * @return {@link Integer}
+     */
+    public int getYIndex(int x, int y) {
+        return y * mYStride + x;
+    }
+
+    /**
+     * Get the index of the V sample of a pixel, the U sample follows it
+     *
+     * @param x {@link Integer}
+     * @param y {@link Integer}
+     * @return {@link Integer}
+     */
+    public int getVuIndex(int x, int y) {
+        return mUvOffset + (y >> 1) * mUvStride + (x & 0xFFFFFFFE);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof FrameDescriptor)) {
+            return false;
+        }
+        FrameDescriptor other = (FrameDescriptor) o;
+        return mWidth == other.mWidth && mHeight == other.mHeight && mYStride == other.mYStride
+                && mUvStride == other.mUvStride && mUvOffset == other.mUvOffset;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = mWidth;
+        result = 31 * result + mHeight;
+        result = 31 * result + mYStride;
+        result = 31 * result + mUvStride;
+        result = 31 * result + mUvOffset;
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "FrameDescriptor{" + mWidth + "x" + mHeight + ", yStride=" + mYStride
+                + ", uvStride=" + mUvStride + ", uvOffset=" + mUvOffset + "}";
+    }
+
+}
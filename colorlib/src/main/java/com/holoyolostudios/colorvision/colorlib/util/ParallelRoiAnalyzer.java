@@ -0,0 +1,258 @@
+/*
+ * Copyright 2014 Martin Brabham
+ * Copyright 2014 Daniel Velazco
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+package com.holoyolostudios.colorvision.colorlib.util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * ParallelRoiAnalyzer
+ * <p/>
+ * Gathers {@link RoiStatistics} for large areas by splitting them into bands of rows that are
+ * summed by dedicated worker threads, with the calling thread taking the last band. Areas below
+ * the size threshold are summed on the calling thread. Band sums are integers, so the result is
+ * bit-identical to {@link ColorAnalyzerUtil#accumulateStatistics}.
+ * <p/>
+ * Each worker owns one band and parks between frames; bands are handed over and joined through
+ * a reused counter, so a call allocates nothing. {@link FrameAnalyzer} uses one for areas of at
+ * least two bands at full resolution.
+ * <p/>
+ * Calls are serialized, use one analyzer per analysis thread for concurrent analysis.
+ * <p/>
+ *
+ * @author Martin Brabham
+ * @author Daniel Velazco
+ */
+public class ParallelRoiAnalyzer {
+
+    // Constants
+    public static final int DEFAULT_MIN_PIXELS_PER_BAND = 32 * 1024;
+    private static final AtomicInteger sThreadCount = new AtomicInteger();
+
+    // Members
+    private final int mParallelism;
+    private final int mMinPixelsPerBand;
+    private final Band[] mBands;
+    private final Thread[] mWorkers;
+    private final AtomicInteger mPending = new AtomicInteger();
+    private volatile Thread mCaller = null;
+    private volatile boolean mShutdown = false;
+
+    /**
+     * Constructor using one band per available processor
+     */
+    public ParallelRoiAnalyzer() {
+        this(Runtime.getRuntime().availableProcessors(), DEFAULT_MIN_PIXELS_PER_BAND);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param parallelism      {@link Integer} maximum number of bands, including the calling thread
+     * @param minPixelsPerBand {@link Integer} smallest number of pixels worth handing to another thread
+     */
+    public ParallelRoiAnalyzer(int parallelism, int minPixelsPerBand) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1.");
+        }
+        mParallelism = parallelism;
+        mMinPixelsPerBand = Math.max(1, minPixelsPerBand);
+        mBands = new Band[parallelism];
+        for (int i = 0; i < parallelism; i++) {
+            mBands[i] = new Band();
+        }
+
+        // The last band is always summed by the calling thread
+        mWorkers = new Thread[parallelism - 1];
+        for (int i = 0; i < mWorkers.length; i++) {
+            final Band band = mBands[i];
+            mWorkers[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    work(band);
+                }
+            }, "ParallelRoiAnalyzer-" + sThreadCount.incrementAndGet());
+            mWorkers[i].setDaemon(true);
+            mWorkers[i].start();
+        }
+    }
+
+    /**
+     * Get the maximum number of bands an area is split into
+     *
+     * @return {@link Integer}
+     */
+    public int getParallelism() {
+        return mParallelism;
+    }
+
+    /**
+     * Get how many bands an area would be split into, 1 if it is summed on the calling thread
+     *
+     * @param x1 {@link Integer}
+     * @param y1 {@link Integer}
+     * @param x2 {@link Integer}
+     * @param y2 {@link Integer}
+     * @return {@link Integer}
+     */
+    public int getBandCount(int x1, int y1, int x2, int y2) {
+        int rows = y2 - y1;
+        int pixels = (x2 - x1 + 1) * rows;
+        return Math.max(1, Math.min(Math.min(mParallelism, rows), pixels / mMinPixelsPerBand));
+    }
+
+    /**
+     * Gather the statistics of a rect area, bounds as in
+     * {@link ColorAnalyzerUtil#getAverageColor(FrameDescriptor, byte[], int, int, int, int)}
+     *
+     * @param frame       {@link com.holoyolostudios.colorvision.colorlib.util.FrameDescriptor}
+     * @param yuv         byte array
+     * @param x1          {@link Integer}
+     * @param y1          {@link Integer}
+     * @param x2          {@link Integer}
+     * @param y2          {@link Integer}
+     * @param withSquares {@link boolean} whether to gather sums of squares for the variance
+     * @param stats       {@link com.holoyolostudios.colorvision.colorlib.util.RoiStatistics} to fill
+     * @return {@link com.holoyolostudios.colorvision.colorlib.util.RoiStatistics} the statistics passed in
+     */
+    public synchronized RoiStatistics computeStatistics(FrameDescriptor frame, byte[] yuv, int x1, int y1,
+                                                        int x2, int y2, boolean withSquares,
+                                                        RoiStatistics stats) {
+        stats.reset(withSquares);
+        int bands = getBandCount(x1, y1, x2, y2);
+        if (bands <= 1 || mShutdown) {
+            ColorAnalyzerUtil.accumulateStatistics(frame, yuv, x1, y1, x2, y2, withSquares, stats);
+            return stats;
+        }
+
+        // Hand all but the last band to the workers
+        int rows = y2 - y1;
+        mCaller = Thread.currentThread();
+        mPending.set(bands - 1);
+        int start = y1;
+        for (int i = 0; i < bands; i++) {
+            int end = y1 + (int) ((long) rows * (i + 1) / bands);
+            mBands[i].set(frame, yuv, x1, start, x2, end, withSquares);
+            if (i < bands - 1) {
+                mBands[i].mReady = true;
+                LockSupport.unpark(mWorkers[i]);
+            }
+            start = end;
+        }
+        mBands[bands - 1].run();
+
+        // Wait for the workers even if interrupted, they still reference the frame
+        boolean interrupted = false;
+        while (mPending.get() > 0) {
+            LockSupport.park(this);
+            if (Thread.interrupted()) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        for (int i = 0; i < bands; i++) {
+            Band band = mBands[i];
+            if (band.mError != null) {
+                Throwable error = band.mError;
+                band.clear();
+                throw new RuntimeException("Band analysis failed", error);
+            }
+            stats.add(band.mStats);
+            band.clear();
+        }
+        return stats;
+    }
+
+    /**
+     * Stop the worker threads once the call in progress, if any, has finished. Later calls sum
+     * every area on the calling thread.
+     */
+    public synchronized void shutdown() {
+        mShutdown = true;
+        for (Thread worker : mWorkers) {
+            LockSupport.unpark(worker);
+        }
+    }
+
+    /**
+     * Worker loop, sums its band whenever one is handed over and parks otherwise
+     */
+    private void work(Band band) {
+        while (true) {
+            if (band.mReady) {
+                band.mReady = false;
+                band.run();
+                if (mPending.decrementAndGet() == 0) {
+                    LockSupport.unpark(mCaller);
+                }
+            } else if (mShutdown) {
+                return;
+            } else {
+                LockSupport.park(this);
+            }
+        }
+    }
+
+    /**
+     * Rows of an area summed by one thread
+     */
+    private static class Band implements Runnable {
+
+        // Members
+        private final RoiStatistics mStats = new RoiStatistics();
+        private FrameDescriptor mFrame = null;
+        private byte[] mYuv = null;
+        private int mX1, mY1, mX2, mY2;
+        private boolean mWithSquares = false;
+        private Throwable mError = null;
+
+        // Set by the calling thread after the fields above, publishes them to the worker
+        private volatile boolean mReady = false;
+
+        void set(FrameDescriptor frame, byte[] yuv, int x1, int y1, int x2, int y2, boolean withSquares) {
+            mFrame = frame;
+            mYuv = yuv;
+            mX1 = x1;
+            mY1 = y1;
+            mX2 = x2;
+            mY2 = y2;
+            mWithSquares = withSquares;
+            mError = null;
+        }
+
+        void clear() {
+            mFrame = null;
+            mYuv = null;
+            mError = null;
+        }
+
+        @Override
+        public void run() {
+            try {
+                mStats.reset(mWithSquares);
+                ColorAnalyzerUtil.accumulateStatistics(mFrame, mYuv, mX1, mY1, mX2, mY2, mWithSquares, mStats);
+            } catch (Throwable t) {
+                mError = t;
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright 2014 Martin Brabham
+ * Copyright 2014 Daniel Velazco
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+package com.holoyolostudios.colorvision.colorlib.util;
+
+import android.hardware.Camera;
+
+/**
+ * PreviewBufferPool
+ * <p/>
+ * Set of preview callback buffers kept in rotation with a {@link android.hardware.Camera} using
+ * {@link android.hardware.Camera#setPreviewCallbackWithBuffer}. The buffers belong to the pool,
+ * not to a preview session: {@link #attach} reuses them as long as the frame size is unchanged,
+ * so restarting the preview does not allocate.
+ * <p/>
+ * The pool counts the buffers currently queued in the camera. A frame delivered while no other
+ * buffer is queued leaves the camera with nowhere to write the next frame until one is
+ * recycled, these frames are counted as starved and can be used to tune the buffer count for a
+ * device.
+ * <p/>
+ *
+ * @author Martin Brabham
+ * @author Daniel Velazco
+ */
+public class PreviewBufferPool {
+
+    // Constants
+    public static final int DEFAULT_BUFFER_COUNT = 3;
+
+    // Members
+    private final int mBufferCount;
+    private byte[][] mBuffers = null;
+    private int mBufferSize = -1;
+    private Camera mCamera = null;
+    private int mQueued = 0;
+    private int mAllocations = 0;
+    private long mFramesDelivered = 0;
+    private long mFramesStarved = 0;
+    private int mMinQueued = Integer.MAX_VALUE;
+
+    /**
+     * Constructor using {@link #DEFAULT_BUFFER_COUNT} buffers
+     */
+    public PreviewBufferPool() {
+        this(DEFAULT_BUFFER_COUNT);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param bufferCount {@link Integer} number of buffers kept in rotation
+     */
+    public PreviewBufferPool(int bufferCount) {
+        if (bufferCount < 1) {
+            throw new IllegalArgumentException("Buffer count must be at least 1.");
+        }
+        mBufferCount = bufferCount;
+    }
+
+    /**
+     * Queue every buffer in the pool with the camera, reallocating them only if the frame size
+     * changed. Call after {@link android.hardware.Camera#setPreviewCallbackWithBuffer}.
+     *
+     * @param camera {@link android.hardware.Camera}
+     * @param frame  {@link com.holoyolostudios.colorvision.colorlib.util.FrameDescriptor}
+     */
+    public synchronized void attach(Camera camera, FrameDescriptor frame) {
+        int size = frame.getBufferSize();
+        if (mBuffers == null || mBufferSize != size) {
+            mBuffers = new byte[mBufferCount][];
+            for (int i = 0; i < mBufferCount; i++) {
+                mBuffers[i] = new byte[size];
+            }
+            mBufferSize = size;
+            mAllocations++;
+        }
+        mCamera = camera;
+        for (byte[] buffer : mBuffers) {
+            camera.addCallbackBuffer(buffer);
+        }
+        mQueued = mBufferCount;
+    }
+
+    /**
+     * Forget the current camera. Buffers still queued in it are queued again by the next
+     * {@link #attach}, so this should be called once the camera no longer delivers frames.
+     */
+    public synchronized void detach() {
+        mCamera = null;
+        mQueued = 0;
+    }
+
+    /**
+     * Record the delivery of a frame, call first thing in
+     * {@link android.hardware.Camera.PreviewCallback#onPreviewFrame}
+     *
+     * @param data byte array delivered by the camera
+     */
+    public synchronized void onFrameDelivered(byte[] data) {
+        if (mCamera == null || !isPooled(data)) {
+            return;
+        }
+        mQueued--;
+        mFramesDelivered++;
+        if (mQueued == 0) {
+            mFramesStarved++;
+        }
+        if (mQueued < mMinQueued) {
+            mMinQueued = mQueued;
+        }
+    }
+
+    /**
+     * Give a delivered buffer back to the camera. Buffers that do not belong to the pool, or
+     * that arrive after the pool was detached from the camera, are ignored.
+     *
+     * @param camera {@link android.hardware.Camera}
+     * @param data   byte array delivered by the camera
+     */
+    public synchronized void recycle(Camera camera, byte[] data) {
+        if (camera != mCamera || !isPooled(data)) {
+            return;
+        }
+        camera.addCallbackBuffer(data);
+        mQueued++;
+    }
+
+    private boolean isPooled(byte[] data) {
+        if (data == null || data.length != mBufferSize) {
+            return false;
+        }
+        for (byte[] buffer : mBuffers) {
+            if (buffer == data) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get the number of buffers kept in rotation
+     *
+     * @return {@link Integer}
+     */
+    public int getBufferCount() {
+        return mBufferCount;
+    }
+
+    /**
+     * Get the number of times the buffers were allocated, once per distinct frame size
+     *
+     * @return {@link Integer}
+     */
+    public synchronized int getAllocations() {
+        return mAllocations;
+    }
+
+    /**
+     * Get the number of buffers currently queued in the camera
+     *
+     * @return {@link Integer}
+     */
+    public synchronized int getQueuedCount() {
+        return mQueued;
+    }
+
+    /**
+     * Get the number of frames delivered since the stats were last reset
+     *
+     * @return {@link Long}
+     */
+    public synchronized long getFramesDelivered() {
+        return mFramesDelivered;
+    }
+
+    /**
+     * Get the number of frames delivered while no other buffer was queued in the camera
+     *
+     * @return {@link Long}
+     */
+    public synchronized long getFramesStarved() {
+        return mFramesStarved;
+    }
+
+    /**
+     * Get the fewest buffers left queued in the camera after a delivery, -1 if no frame was
+     * delivered since the stats were last reset
+     *
+     * @return {@link Integer}
+     */
+    public synchronized int getMinQueuedCount() {
+        return (mMinQueued == Integer.MAX_VALUE) ? -1 : mMinQueued;
+    }
+
+    /**
+     * Reset the delivery and starvation stats
+     */
+    public synchronized void resetStats() {
+        mFramesDelivered = 0;
+        mFramesStarved = 0;
+        mMinQueued = Integer.MAX_VALUE;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "PreviewBufferPool{buffers=" + mBufferCount + ", size=" + mBufferSize
+                + ", allocations=" + mAllocations + ", delivered=" + mFramesDelivered
+                + ", starved=" + mFramesStarved + ", minQueued=" + getMinQueuedCount() + "}";
+    }
+
+}
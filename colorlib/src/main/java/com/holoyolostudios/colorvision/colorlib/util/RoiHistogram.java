@@ -0,0 +1,277 @@
+/*
+ * Copyright 2014 Martin Brabham
+ * Copyright 2014 Daniel Velazco
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+package com.holoyolostudios.colorvision.colorlib.util;
+
+import android.graphics.Color;
+
+/**
+ * RoiHistogram
+ * <p/>
+ * Mutable, reusable per-channel 256 bin RGB histograms of an area of a frame, filled by
+ * {@link ColorAnalyzerUtil#accumulateHistogram}. The bins are allocated once, so gathering and
+ * reading the estimators below takes time linear in the number of pixels plus the bin count,
+ * without sorting and without allocating.
+ * <p/>
+ * The median and the trimmed mean are robust against small parts of the area that are far from
+ * the rest, such as specular highlights or shadows, which drag the plain mean towards them.
+ * Histograms of disjoint areas can be merged with {@link #add(RoiHistogram)}.
+ * <p/>
+ *
+ * @author Martin Brabham
+ * @author Daniel Velazco
+ */
+public class RoiHistogram {
+
+    // Constants
+    public static final int BINS = 256;
+    public static final double DEFAULT_TRIM = 0.2;
+
+    // Members
+    private final int[] mRed = new int[BINS];
+    private final int[] mGreen = new int[BINS];
+    private final int[] mBlue = new int[BINS];
+    private long mCount = 0;
+
+    /**
+     * Clear all bins
+     */
+    public void reset() {
+        for (int i = 0; i < BINS; i++) {
+            mRed[i] = 0;
+            mGreen[i] = 0;
+            mBlue[i] = 0;
+        }
+        mCount = 0;
+    }
+
+    /**
+     * Merge the histograms of a disjoint area into these
+     *
+     * @param other {@link com.holoyolostudios.colorvision.colorlib.util.RoiHistogram}
+     */
+    public void add(RoiHistogram other) {
+        for (int i = 0; i < BINS; i++) {
+            mRed[i] += other.mRed[i];
+            mGreen[i] += other.mGreen[i];
+            mBlue[i] += other.mBlue[i];
+        }
+        mCount += other.mCount;
+    }
+
+    /**
+     * Get the red bins for an analysis loop to fill
+     */
+    int[] getRedBins() {
+        return mRed;
+    }
+
+    /**
+     * Get the green bins for an analysis loop to fill
+     */
+    int[] getGreenBins() {
+        return mGreen;
+    }
+
+    /**
+     * Get the blue bins for an analysis loop to fill
+     */
+    int[] getBlueBins() {
+        return mBlue;
+    }
+
+    /**
+     * Add the number of pixels an analysis loop put into the bins
+     */
+    void accumulate(long count) {
+        mCount += count;
+    }
+
+    /**
+     * Get the number of pixels in the histograms
+     *
+     * @return {@link long}
+     */
+    public long getCount() {
+        return mCount;
+    }
+
+    /**
+     * Get the number of pixels of a red value
+     *
+     * @param value {@link Integer} 0 to 255
+     * @return {@link Integer}
+     */
+    public int getRed(int value) {
+        return mRed[value];
+    }
+
+    /**
+     * Get the number of pixels of a green value
+     *
+     * @param value {@link Integer} 0 to 255
+     * @return {@link Integer}
+     */
+    public int getGreen(int value) {
+        return mGreen[value];
+    }
+
+    /**
+     * Get the number of pixels of a blue value
+     *
+     * @param value {@link Integer} 0 to 255
+     * @return {@link Integer}
+     */
+    public int getBlue(int value) {
+        return mBlue[value];
+    }
+
+    /**
+     * Get the median of the red channel, the lower one for an even count
+     *
+     * @return {@link Integer} 0 if empty
+     */
+    public int getMedianRed() {
+        return getMedian(mRed, mCount);
+    }
+
+    /**
+     * Get the median of the green channel, the lower one for an even count
+     *
+     * @return {@link Integer} 0 if empty
+     */
+    public int getMedianGreen() {
+        return getMedian(mGreen, mCount);
+    }
+
+    /**
+     * Get the median of the blue channel, the lower one for an even count
+     *
+     * @return {@link Integer} 0 if empty
+     */
+    public int getMedianBlue() {
+        return getMedian(mBlue, mCount);
+    }
+
+    /**
+     * Get the per-channel median as a packed opaque ARGB pixel. Each channel is its own median,
+     * so the result is not necessarily the color of any one pixel.
+     *
+     * @return {@link Integer}
+     */
+    public int getMedianPixel() {
+        return Color.rgb(getMedianRed(), getMedianGreen(), getMedianBlue());
+    }
+
+    /**
+     * Get the trimmed mean of the red channel, see {@link #getTrimmedMeanPixel(double)}
+     *
+     * @param trim {@link double} fraction of the pixels dropped at each end
+     * @return {@link Integer} 0 if empty
+     */
+    public int getTrimmedMeanRed(double trim) {
+        return getTrimmedMean(mRed, mCount, trim);
+    }
+
+    /**
+     * Get the trimmed mean of the green channel, see {@link #getTrimmedMeanPixel(double)}
+     *
+     * @param trim {@link double} fraction of the pixels dropped at each end
+     * @return {@link Integer} 0 if empty
+     */
+    public int getTrimmedMeanGreen(double trim) {
+        return getTrimmedMean(mGreen, mCount, trim);
+    }
+
+    /**
+     * Get the trimmed mean of the blue channel, see {@link #getTrimmedMeanPixel(double)}
+     *
+     * @param trim {@link double} fraction of the pixels dropped at each end
+     * @return {@link Integer} 0 if empty
+     */
+    public int getTrimmedMeanBlue(double trim) {
+        return getTrimmedMean(mBlue, mCount, trim);
+    }
+
+    /**
+     * Get the per-channel trimmed mean using {@link #DEFAULT_TRIM} as a packed opaque ARGB pixel
+     *
+     * @return {@link Integer}
+     */
+    public int getTrimmedMeanPixel() {
+        return getTrimmedMeanPixel(DEFAULT_TRIM);
+    }
+
+    /**
+     * Get the per-channel trimmed mean as a packed opaque ARGB pixel. The darkest and the
+     * brightest trim fraction of the values of each channel are dropped and the rest averaged,
+     * truncating like the plain mean. A trim of 0 gives the plain mean, the result approaches the
+     * median as the trim approaches 0.5.
+     *
+     * @param trim {@link double} fraction of the pixels dropped at each end, 0 to 0.5
+     * @return {@link Integer}
+     */
+    public int getTrimmedMeanPixel(double trim) {
+        return Color.rgb(getTrimmedMeanRed(trim), getTrimmedMeanGreen(trim), getTrimmedMeanBlue(trim));
+    }
+
+    /**
+     * Find the value at rank (count - 1) / 2 by walking the cumulative counts
+     */
+    private static int getMedian(int[] bins, long count) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (count - 1) / 2;
+        long seen = 0;
+        for (int value = 0; value < BINS; value++) {
+            seen += bins[value];
+            if (seen > rank) {
+                return value;
+            }
+        }
+        return BINS - 1;
+    }
+
+    /**
+     * Average the values at ranks [trimmed, count - trimmed), bins straddling either end only
+     * count with the pixels inside
+     */
+    private static int getTrimmedMean(int[] bins, long count, double trim) {
+        if (count == 0) {
+            return 0;
+        }
+        long trimmed = (long) (count * Math.max(0, Math.min(0.5, trim)));
+        long low = trimmed;
+        long high = count - trimmed;
+        if (high <= low) {
+            // Everything trimmed, only possible for a trim of 0.5 and an even count
+            return getMedian(bins, count);
+        }
+        long sum = 0;
+        long seen = 0;
+        for (int value = 0; value < BINS && seen < high; value++) {
+            long next = seen + bins[value];
+            long inside = Math.min(next, high) - Math.max(seen, low);
+            if (inside > 0) {
+                sum += inside * value;
+            }
+            seen = next;
+        }
+        return (int) (sum / (high - low));
+    }
+
+}
@@ -0,0 +1,416 @@
+/*
+ * Copyright 2014 Martin Brabham
+ * Copyright 2014 Daniel Velazco
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+package com.holoyolostudios.colorvision.colorlib.util;
+
+import android.graphics.Color;
+
+/**
+ * RoiStatistics
+ * <p/>
+ * Mutable, reusable holder for the RGB statistics of an area of a frame: pixel count,
+ * per-channel sums, minimum and maximum and, optionally, per-channel sums of squares for the
+ * variance and {@link #getUniformity()}.
+ * Statistics of disjoint areas can be merged with {@link #add(RoiStatistics)}; all sums
+ * are integers, so merging partial results gives exactly the sequential result.
+ * <p/>
+ * The statistics may cover only a sample of the pixels of the area, see
+ * {@link ColorAnalyzerUtil#sampleStatistics}. The population then counts every pixel of the
+ * area and the standard errors tell how far the sampled mean can be expected to be from the
+ * mean of the whole area.
+ * <p/>
+ *
+ * @author Martin Brabham
+ * @author Daniel Velazco
+ */
+public class RoiStatistics {
+
+    // Constants
+    public static final double UNIFORMITY_SCALE = 24;
+
+    // Members
+    private long mPopulation = 0;
+    private long mCount = 0;
+    private long mSumRed = 0;
+    private long mSumGreen = 0;
+    private long mSumBlue = 0;
+    private long mSumSquaresRed = 0;
+    private long mSumSquaresGreen = 0;
+    private long mSumSquaresBlue = 0;
+    private boolean mHasSquares = false;
+    private int mMinRed = 255;
+    private int mMaxRed = 0;
+    private int mMinGreen = 255;
+    private int mMaxGreen = 0;
+    private int mMinBlue = 255;
+    private int mMaxBlue = 0;
+
+    /**
+     * Clear all statistics
+     *
+     * @param withSquares {@link boolean} whether sums of squares will be gathered
+     */
+    public void reset(boolean withSquares) {
+        mPopulation = 0;
+        mCount = 0;
+        mSumRed = 0;
+        mSumGreen = 0;
+        mSumBlue = 0;
+        mSumSquaresRed = 0;
+        mSumSquaresGreen = 0;
+        mSumSquaresBlue = 0;
+        mHasSquares = withSquares;
+        mMinRed = 255;
+        mMaxRed = 0;
+        mMinGreen = 255;
+        mMaxGreen = 0;
+        mMinBlue = 255;
+        mMaxBlue = 0;
+    }
+
+    /**
+     * Merge the statistics of a disjoint area into these
+     *
+     * @param other {@link com.holoyolostudios.colorvision.colorlib.util.RoiStatistics}
+     */
+    public void add(RoiStatistics other) {
+        mPopulation += other.mPopulation;
+        mCount += other.mCount;
+        mSumRed += other.mSumRed;
+        mSumGreen += other.mSumGreen;
+        mSumBlue += other.mSumBlue;
+        mSumSquaresRed += other.mSumSquaresRed;
+        mSumSquaresGreen += other.mSumSquaresGreen;
+        mSumSquaresBlue += other.mSumSquaresBlue;
+        mHasSquares = mHasSquares && other.mHasSquares;
+        accumulateRange(other.mMinRed, other.mMaxRed, other.mMinGreen, other.mMaxGreen,
+                other.mMinBlue, other.mMaxBlue);
+    }
+
+    /**
+     * Add raw sums gathered by an analysis loop over count of the population pixels of an area
+     */
+    void accumulate(long population, long count, long sumRed, long sumGreen, long sumBlue,
+                    long sumSquaresRed, long sumSquaresGreen, long sumSquaresBlue) {
+        mPopulation += population;
+        mCount += count;
+        mSumRed += sumRed;
+        mSumGreen += sumGreen;
+        mSumBlue += sumBlue;
+        mSumSquaresRed += sumSquaresRed;
+        mSumSquaresGreen += sumSquaresGreen;
+        mSumSquaresBlue += sumSquaresBlue;
+    }
+
+    /**
+     * Widen the per-channel ranges to include the given ones
+     */
+    void accumulateRange(int minRed, int maxRed, int minGreen, int maxGreen, int minBlue, int maxBlue) {
+        mMinRed = (minRed < mMinRed) ? minRed : mMinRed;
+        mMaxRed = (maxRed > mMaxRed) ? maxRed : mMaxRed;
+        mMinGreen = (minGreen < mMinGreen) ? minGreen : mMinGreen;
+        mMaxGreen = (maxGreen > mMaxGreen) ? maxGreen : mMaxGreen;
+        mMinBlue = (minBlue < mMinBlue) ? minBlue : mMinBlue;
+        mMaxBlue = (maxBlue > mMaxBlue) ? maxBlue : mMaxBlue;
+    }
+
+    /**
+     * Get the number of pixels sampled
+     *
+     * @return {@link long}
+     */
+    public long getCount() {
+        return mCount;
+    }
+
+    /**
+     * Get the number of pixels in the area, equal to {@link #getCount()} unless it was sampled
+     *
+     * @return {@link long}
+     */
+    public long getPopulation() {
+        return mPopulation;
+    }
+
+    /**
+     * Check whether sums of squares were gathered, without them the variance is not available
+     *
+     * @return {@link boolean}
+     */
+    public boolean hasVariance() {
+        return mHasSquares;
+    }
+
+    /**
+     * Get the sum of the red channel
+     *
+     * @return {@link long}
+     */
+    public long getSumRed() {
+        return mSumRed;
+    }
+
+    /**
+     * Get the sum of the green channel
+     *
+     * @return {@link long}
+     */
+    public long getSumGreen() {
+        return mSumGreen;
+    }
+
+    /**
+     * Get the sum of the blue channel
+     *
+     * @return {@link long}
+     */
+    public long getSumBlue() {
+        return mSumBlue;
+    }
+
+    /**
+     * Get the sum of squares of the red channel
+     *
+     * @return {@link long}
+     */
+    public long getSumSquaresRed() {
+        return mSumSquaresRed;
+    }
+
+    /**
+     * Get the sum of squares of the green channel
+     *
+     * @return {@link long}
+     */
+    public long getSumSquaresGreen() {
+        return mSumSquaresGreen;
+    }
+
+    /**
+     * Get the sum of squares of the blue channel
+     *
+     * @return {@link long}
+     */
+    public long getSumSquaresBlue() {
+        return mSumSquaresBlue;
+    }
+
+    /**
+     * Get the smallest red value
+     *
+     * @return {@link int}
+     */
+    public int getMinRed() {
+        return mMinRed;
+    }
+
+    /**
+     * Get the largest red value
+     *
+     * @return {@link int}
+     */
+    public int getMaxRed() {
+        return mMaxRed;
+    }
+
+    /**
+     * Get the smallest green value
+     *
+     * @return {@link int}
+     */
+    public int getMinGreen() {
+        return mMinGreen;
+    }
+
+    /**
+     * Get the largest green value
+     *
+     * @return {@link int}
+     */
+    public int getMaxGreen() {
+        return mMaxGreen;
+    }
+
+    /**
+     * Get the smallest blue value
+     *
+     * @return {@link int}
+     */
+    public int getMinBlue() {
+        return mMinBlue;
+    }
+
+    /**
+     * Get the largest blue value
+     *
+     * @return {@link int}
+     */
+    public int getMaxBlue() {
+        return mMaxBlue;
+    }
+
+    /**
+     * Get the mean of the red channel
+     *
+     * @return {@link double}
+     */
+    public double getMeanRed() {
+        return (double) mSumRed / mCount;
+    }
+
+    /**
+     * Get the mean of the green channel
+     *
+     * @return {@link double}
+     */
+    public double getMeanGreen() {
+        return (double) mSumGreen / mCount;
+    }
+
+    /**
+     * Get the mean of the blue channel
+     *
+     * @return {@link double}
+     */
+    public double getMeanBlue() {
+        return (double) mSumBlue / mCount;
+    }
+
+    /**
+     * Get the variance of the red channel
+     *
+     * @return {@link double}
+     */
+    public double getVarianceRed() {
+        return variance(mSumRed, mSumSquaresRed);
+    }
+
+    /**
+     * Get the variance of the green channel
+     *
+     * @return {@link double}
+     */
+    public double getVarianceGreen() {
+        return variance(mSumGreen, mSumSquaresGreen);
+    }
+
+    /**
+     * Get the variance of the blue channel
+     *
+     * @return {@link double}
+     */
+    public double getVarianceBlue() {
+        return variance(mSumBlue, mSumSquaresBlue);
+    }
+
+    /**
+     * Get how uniform the area is, from 1 for a flat color down towards 0. The score is
+     * 1 / (1 + (sd / {@link #UNIFORMITY_SCALE})^2), where sd is the root mean of the three
+     * channel variances: camera noise alone scores above 0.95, a standard deviation of
+     * {@link #UNIFORMITY_SCALE} levels scores 0.5 and an area straddling two different surfaces
+     * scores well below that.
+     *
+     * @return {@link double} NaN if squares were not gathered
+     */
+    public double getUniformity() {
+        double variance = (getVarianceRed() + getVarianceGreen() + getVarianceBlue()) / 3;
+        return 1 / (1 + variance / (UNIFORMITY_SCALE * UNIFORMITY_SCALE));
+    }
+
+    /**
+     * Get the standard error of the red mean
+     *
+     * @return {@link double}
+     */
+    public double getStandardErrorRed() {
+        return standardError(getVarianceRed());
+    }
+
+    /**
+     * Get the standard error of the green mean
+     *
+     * @return {@link double}
+     */
+    public double getStandardErrorGreen() {
+        return standardError(getVarianceGreen());
+    }
+
+    /**
+     * Get the standard error of the blue mean
+     *
+     * @return {@link double}
+     */
+    public double getStandardErrorBlue() {
+        return standardError(getVarianceBlue());
+    }
+
+    /**
+     * Get the largest standard error of the three channel means, in 8 bit levels. Roughly 95% of
+     * the time the sampled mean is within twice this of the mean of the whole area.
+     *
+     * @return {@link double} 0 if every pixel was used, NaN if squares were not gathered
+     */
+    public double getStandardError() {
+        return Math.max(getStandardErrorRed(), Math.max(getStandardErrorGreen(), getStandardErrorBlue()));
+    }
+
+    /**
+     * Get the average color, truncated the same way as
+     * {@link ColorAnalyzerUtil#getAverageColor(FrameDescriptor, byte[], int, int, int, int)}
+     *
+     * @return {@link com.holoyolostudios.colorvision.colorlib.util.ColorAnalyzerUtil.RGBColor}
+     */
+    public ColorAnalyzerUtil.RGBColor getAverageColor() {
+        return new ColorAnalyzerUtil.RGBColor((int) (mSumRed / mCount), (int) (mSumGreen / mCount),
+                (int) (mSumBlue / mCount));
+    }
+
+    /**
+     * Get the average color as a packed opaque ARGB pixel, see {@link #getAverageColor()}
+     *
+     * @return {@link int}
+     */
+    public int getAveragePixel() {
+        return Color.rgb((int) (mSumRed / mCount), (int) (mSumGreen / mCount), (int) (mSumBlue / mCount));
+    }
+
+    /**
+     * Standard error of a mean sampled without replacement, from the variance of the samples
+     */
+    private double standardError(double variance) {
+        if (mCount >= mPopulation) {
+            return Double.isNaN(variance) ? variance : 0;
+        }
+        if (mCount < 2) {
+            return Double.NaN;
+        }
+        // Unbiased sample variance with the finite population correction
+        double n = mCount;
+        return Math.sqrt(variance * n / (n - 1) / n * (1 - n / mPopulation));
+    }
+
+    /**
+     * Population variance from integer sums, or NaN if squares were not gathered
+     */
+    private double variance(long sum, long sumSquares) {
+        if (!mHasSquares || mCount == 0) {
+            return Double.NaN;
+        }
+        // n * sum(x^2) - sum(x)^2 is exact in a long for any frame size we handle
+        return (double) (mCount * sumSquares - sum * sum) / ((double) mCount * mCount);
+    }
+
+}
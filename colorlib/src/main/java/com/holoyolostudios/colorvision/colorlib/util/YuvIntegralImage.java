@@ -0,0 +1,193 @@
+/*
+ * Copyright 2014 Martin Brabham
+ * Copyright 2014 Daniel Velazco
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+package com.holoyolostudios.colorvision.colorlib.util;
+
+/**
+ * YuvIntegralImage
+ * <p/>
+ * Summed-area tables over the Y, U and V planes of a YUV420SPNV21 frame. Once built, the sums
+ * and the average color of any rectangle cost four lookups per plane, so sampling several
+ * regions of the same frame costs one pass over the frame instead of one pass per region.
+ * <p/>
+ * The chroma tables are kept at full resolution, every pixel contributing the U and V of its
+ * 2x2 block, so the sums are exactly those of the per-pixel loop. The tables are reused
+ * between frames of the same size.
+ * <p/>
+ *
+ * @author Martin Brabham
+ * @author Daniel Velazco
+ */
+public class YuvIntegralImage {
+
+    // Constants
+    private static final int MAX_PIXELS = Integer.MAX_VALUE / 255;
+
+    // Members
+    private int mWidth = 0;
+    private int mHeight = 0;
+    private int mStride = 0;
+    private int[] mSumY = null;
+    private int[] mSumU = null;
+    private int[] mSumV = null;
+
+    /**
+     * Build the tables for a frame, reusing the existing buffers when the size is unchanged
+     *
+     * @param frame {@link com.holoyolostudios.colorvision.colorlib.util.FrameDescriptor}
+     * @param yuv   byte array
+     */
+    public void build(FrameDescriptor frame, byte[] yuv) {
+        int width = frame.getWidth();
+        int height = frame.getHeight();
+        if (width * height > MAX_PIXELS) {
+            throw new IllegalArgumentException("Frame is too large for integer sums: " + width + "x" + height);
+        }
+        int stride = width + 1;
+        int length = stride * (height + 1);
+        if (mSumY == null || mSumY.length != length) {
+            mSumY = new int[length];
+            mSumU = new int[length];
+            mSumV = new int[length];
+        }
+        mWidth = width;
+        mHeight = height;
+        mStride = stride;
+
+        final int[] sumY = mSumY;
+        final int[] sumU = mSumU;
+        final int[] sumV = mSumV;
+        final int yStride = frame.getYStride();
+        final int uvStride = frame.getUvStride();
+        final int uvOffset = frame.getUvOffset();
+
+        // The first row and column stay zero
+        for (int y = 0; y < height; y++) {
+            int row = y * yStride;
+            int uvRow = uvOffset + (y >> 1) * uvStride;
+            int above = y * stride + 1;
+            int current = above + stride;
+            int rowY = 0;
+            int rowU = 0;
+            int rowV = 0;
+            for (int x = 0; x < width; x++) {
+                int uv = uvRow + (x & 0xFFFFFFFE);
+                rowY += 0xFF & yuv[row + x];
+                rowV += 0xFF & yuv[uv];
+                rowU += 0xFF & yuv[uv + 1];
+                sumY[current + x] = sumY[above + x] + rowY;
+                sumU[current + x] = sumU[above + x] + rowU;
+                sumV[current + x] = sumV[above + x] + rowV;
+            }
+        }
+    }
+
+    /**
+     * Get the width of the last frame built
+     *
+     * @return {@link Integer}
+     */
+    public int getWidth() {
+        return mWidth;
+    }
+
+    /**
+     * Get the height of the last frame built
+     *
+     * @return {@link Integer}
+     */
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * Sum of the Y plane over the area, using the same bounds as
+     * {@link ColorAnalyzerUtil#getAverageColor(FrameDescriptor, byte[], int, int, int, int)}: x2 inclusive, y2 exclusive
+     *
+     * @param x1 {@link Integer}
+     * @param y1 {@link Integer}
+     * @param x2 {@link Integer}
+     * @param y2 {@link Integer}
+     * @return {@link Integer}
+     */
+    public int getSumY(int x1, int y1, int x2, int y2) {
+        return sum(mSumY, x1, y1, x2, y2);
+    }
+
+    /**
+     * Sum of the U plane over the area, x2 inclusive, y2 exclusive
+     *
+     * @param x1 {@link Integer}
+     * @param y1 {@link Integer}
+     * @param x2 {@link Integer}
+     * @param y2 {@link Integer}
+     * @return {@link Integer}
+     */
+    public int getSumU(int x1, int y1, int x2, int y2) {
+        return sum(mSumU, x1, y1, x2, y2);
+    }
+
+    /**
+     * Sum of the V plane over the area, x2 inclusive, y2 exclusive
+     *
+     * @param x1 {@link Integer}
+     * @param y1 {@link Integer}
+     * @param x2 {@link Integer}
+     * @param y2 {@link Integer}
+     * @return {@link Integer}
+     */
+    public int getSumV(int x1, int y1, int x2, int y2) {
+        return sum(mSumV, x1, y1, x2, y2);
+    }
+
+    /**
+     * Get the average color of the area, converting the Y, U and V means once. This matches
+     * {@link ColorAnalyzerUtil#AVERAGE_MODE_YUV} except that there is no fallback for clamping pixels.
+     *
+     * @param x1 {@link Integer}
+     * @param y1 {@link Integer}
+     * @param x2 {@link Integer}
+     * @param y2 {@link Integer}
+     * @return {@link com.holoyolostudios.colorvision.colorlib.util.ColorAnalyzerUtil.RGBColor}
+     */
+    public ColorAnalyzerUtil.RGBColor getAverageColor(int x1, int y1, int x2, int y2) {
+        return ColorAnalyzerUtil.getColorFromYuvSums(getSumY(x1, y1, x2, y2), getSumU(x1, y1, x2, y2),
+                getSumV(x1, y1, x2, y2), (x2 - x1 + 1) * (y2 - y1));
+    }
+
+    /**
+     * Get the average color of the area as a packed opaque ARGB pixel, see
+     * {@link #getAverageColor(int, int, int, int)}
+     *
+     * @param x1 {@link Integer}
+     * @param y1 {@link Integer}
+     * @param x2 {@link Integer}
+     * @param y2 {@link Integer}
+     * @return {@link Integer}
+     */
+    public int getAveragePixel(int x1, int y1, int x2, int y2) {
+        return ColorAnalyzerUtil.getPixelFromYuvSums(getSumY(x1, y1, x2, y2), getSumU(x1, y1, x2, y2),
+                getSumV(x1, y1, x2, y2), (x2 - x1 + 1) * (y2 - y1));
+    }
+
+    private int sum(int[] table, int x1, int y1, int x2, int y2) {
+        int top = y1 * mStride;
+        int bottom = y2 * mStride;
+        int right = x2 + 1;
+        return table[bottom + right] - table[bottom + x1] - table[top + right] + table[top + x1];
+    }
+
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2014 Martin Brabham
+ * Copyright 2014 Daniel Velazco
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+package com.holoyolostudios.colorvision.colorlib.util;
+
+/**
+ * YuvStatistics
+ * <p/>
+ * Mutable, reusable holder for the Y, U and V statistics of an area of a frame, the
+ * {@link ColorAnalyzerUtil#AVERAGE_MODE_YUV} counterpart of {@link RoiStatistics}: pixel count,
+ * per-plane sums, minimum and maximum and, optionally, sums of squares. Chroma is counted once
+ * per pixel of the area, so every pixel takes the U and V of its 2x2 block.
+ * <p/>
+ * The variances give an estimate of {@link RoiStatistics#getUniformity()} without converting
+ * any pixel to RGB.
+ * <p/>
+ *
+ * @author Martin Brabham
+ * @author Daniel Velazco
+ */
+public class YuvStatistics {
+
+    // How much the variance of U and of V adds to the mean RGB channel variance, the mean of the
+    // squared BT.601 coefficients over the three channels
+    private static final double U_VARIANCE_WEIGHT = (0.344 * 0.344 + 1.772 * 1.772) / 3;
+    private static final double V_VARIANCE_WEIGHT = (1.402 * 1.402 + 0.714 * 0.714) / 3;
+
+    // Members
+    private long mCount = 0;
+    private long mSumY = 0;
+    private long mSumU = 0;
+    private long mSumV = 0;
+    private long mSumSquaresY = 0;
+    private long mSumSquaresU = 0;
+    private long mSumSquaresV = 0;
+    private boolean mHasSquares = false;
+    private int mMinY = 255;
+    private int mMaxY = 0;
+    private int mMinU = 255;
+    private int mMaxU = 0;
+    private int mMinV = 255;
+    private int mMaxV = 0;
+
+    /**
+     * Clear all statistics
+     *
+     * @param withSquares {@link boolean} whether sums of squares will be gathered
+     */
+    public void reset(boolean withSquares) {
+        mCount = 0;
+        mSumY = 0;
+        mSumU = 0;
+        mSumV = 0;
+        mSumSquaresY = 0;
+        mSumSquaresU = 0;
+        mSumSquaresV = 0;
+        mHasSquares = withSquares;
+        mMinY = 255;
+        mMaxY = 0;
+        mMinU = 255;
+        mMaxU = 0;
+        mMinV = 255;
+        mMaxV = 0;
+    }
+
+    /**
+     * Add raw sums gathered by an analysis loop over count pixels of an area
+     */
+    void accumulate(long count, long sumY, long sumU, long sumV,
+                    long sumSquaresY, long sumSquaresU, long sumSquaresV) {
+        mCount += count;
+        mSumY += sumY;
+        mSumU += sumU;
+        mSumV += sumV;
+        mSumSquaresY += sumSquaresY;
+        mSumSquaresU += sumSquaresU;
+        mSumSquaresV += sumSquaresV;
+    }
+
+    /**
+     * Widen the per-plane ranges to include the given ones
+     */
+    void accumulateRange(int minY, int maxY, int minU, int maxU, int minV, int maxV) {
+        mMinY = (minY < mMinY) ? minY : mMinY;
+        mMaxY = (maxY > mMaxY) ? maxY : mMaxY;
+        mMinU = (minU < mMinU) ? minU : mMinU;
+        mMaxU = (maxU > mMaxU) ? maxU : mMaxU;
+        mMinV = (minV < mMinV) ? minV : mMinV;
+        mMaxV = (maxV > mMaxV) ? maxV : mMaxV;
+    }
+
+    /**
+     * Get the number of pixels
+     *
+     * @return {@link long}
+     */
+    public long getCount() {
+        return mCount;
+    }
+
+    /**
+     * Check whether sums of squares were gathered, without them the variance is not available
+     *
+     * @return {@link boolean}
+     */
+    public boolean hasVariance() {
+        return mHasSquares;
+    }
+
+    /**
+     * Check whether every pixel of the area converts to RGB without clamping. Only then is the
+     * converted mean the mean of the converted pixels, otherwise use {@link RoiStatistics}.
+     *
+     * @return {@link boolean}
+     */
+    public boolean isInGamut() {
+        return ColorAnalyzerUtil.isInGamut(mMinY, mMaxY, mMinU, mMaxU, mMinV, mMaxV);
+    }
+
+    /**
+     * Get the variance of the Y plane
+     *
+     * @return {@link double}
+     */
+    public double getVarianceY() {
+        return variance(mSumY, mSumSquaresY);
+    }
+
+    /**
+     * Get the variance of the U plane
+     *
+     * @return {@link double}
+     */
+    public double getVarianceU() {
+        return variance(mSumU, mSumSquaresU);
+    }
+
+    /**
+     * Get the variance of the V plane
+     *
+     * @return {@link double}
+     */
+    public double getVarianceV() {
+        return variance(mSumV, mSumSquaresV);
+    }
+
+    /**
+     * Get how uniform the area is, on the scale of {@link RoiStatistics#getUniformity()}. The
+     * mean RGB channel variance is estimated from the plane variances, leaving out how luma and
+     * chroma vary together; a flat area and camera noise score the same as in RGB.
+     *
+     * @return {@link double} NaN if squares were not gathered
+     */
+    public double getUniformity() {
+        double variance = getVarianceY() + U_VARIANCE_WEIGHT * getVarianceU() + V_VARIANCE_WEIGHT * getVarianceV();
+        double scale = RoiStatistics.UNIFORMITY_SCALE;
+        return 1 / (1 + variance / (scale * scale));
+    }
+
+    /**
+     * Get the average color as a packed opaque ARGB pixel, the means of Y, U and V converted once
+     * like {@link ColorAnalyzerUtil#AVERAGE_MODE_YUV}. Check {@link #isInGamut()} first.
+     *
+     * @return {@link int}
+     */
+    public int getAveragePixel() {
+        return ColorAnalyzerUtil.getPixelFromYuvSums(mSumY, mSumU, mSumV, (int) mCount);
+    }
+
+    /**
+     * Population variance from integer sums, or NaN if squares were not gathered
+     */
+    private double variance(long sum, long sumSquares) {
+        if (!mHasSquares || mCount == 0) {
+            return Double.NaN;
+        }
+        return (double) (mCount * sumSquares - sum * sum) / ((double) mCount * mCount);
+    }
+
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright 2014 Martin Brabham
+ * Copyright 2014 Daniel Velazco
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ */
+package com.holoyolostudios.colorvision.colorlib.view;
+
+import android.graphics.Color;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.view.View;
+import android.widget.TextView;
+import com.holoyolostudios.colorvision.colorlib.colors.ColorNameCache;
+import com.holoyolostudios.colorvision.colorlib.util.ColorAnalyzerUtil;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * ColorReadingPublisher
+ * <p/>
+ * Moves color readings from the analysis thread onto the views. {@link #publish} only stores the
+ * latest reading, together with its palette index, and schedules this runnable if it is not
+ * already pending, so at most one update is ever queued on the {@link android.os.Handler} no
+ * matter how far behind the UI thread falls. Updates are spaced at least
+ * {@link #MIN_UPDATE_INTERVAL_MS} apart to match the display refresh, and views whose value did
+ * not change are not touched. Hex codes are formatted into a reused char array and names come
+ * from the labels cached by {@link com.holoyolostudios.colorvision.colorlib.colors.ColorPalette},
+ * so updating the views does not allocate once every palette entry seen has been labeled.
+ * Each index is named from the palette snapshot it was matched in. The pixel, index and snapshot
+ * travel together in one {@link Reading}, so swapping the palette never pairs an index with the
+ * wrong palette. Readings are handed to the UI thread through a single-slot triple buffer like
+ * the frames of {@link com.holoyolostudios.colorvision.colorlib.util.FrameAnalyzer}, so
+ * publishing does not allocate either.
+ * <p/>
+ * Readings from an area that is not uniform enough, such as a viewport straddling two surfaces,
+ * still update the color but keep the previous name.
+ * <p/>
+ *
+ * @author Martin Brabham
+ * @author Daniel Velazco
+ */
+public class ColorReadingPublisher implements Runnable {
+
+    // Constants
+    public static final long MIN_UPDATE_INTERVAL_MS = 16;
+    public static final double DEFAULT_MIN_UNIFORMITY = 0.5;
+    private static final int NONE = -2;
+
+    // Members
+    private final Handler mHandler;
+    private final ColorNameCache mColorNameCache;
+    private final ColorProgressBar mRBar;
+    private final ColorProgressBar mGBar;
+    private final ColorProgressBar mBBar;
+    private final TextView mColorHexLabel;
+    private final TextView mColorNameLabel;
+    private final View mSampleView;
+    private final AtomicReference<Reading> mSlot = new AtomicReference<Reading>(new Reading());
+    private final AtomicBoolean mPending = new AtomicBoolean();
+    private volatile long mLastUpdateTime = 0;
+    private volatile double mMinUniformity = DEFAULT_MIN_UNIFORMITY;
+
+    // Owned by the publishing side, guarded by this
+    private Reading mBack = new Reading();
+    private int mPublishedIndex = -1;
+    private ColorNameCache.Snapshot mPublishedNames = null;
+
+    // Last values shown, only touched on the UI thread. Readings are opaque, so a transparent
+    // pixel never matches one.
+    private int mShownRed = NONE;
+    private int mShownGreen = NONE;
+    private int mShownBlue = NONE;
+    private int mShownPixel = 0;
+    private int mShownIndex = NONE;
+    private ColorNameCache.Snapshot mShownNames = null;
+    private Reading mFront = new Reading();
+    private final char[] mHexChars = new char[ColorAnalyzerUtil.HEX_CODE_LENGTH];
+
+    /**
+     * Constructor
+     *
+     * @param handler        {@link android.os.Handler} for the UI thread
+     * @param colorNameCache {@link com.holoyolostudios.colorvision.colorlib.colors.ColorNameCache}
+     * @param rBar           {@link com.holoyolostudios.colorvision.colorlib.view.ColorProgressBar}
+     * @param gBar           {@link com.holoyolostudios.colorvision.colorlib.view.ColorProgressBar}
+     * @param bBar           {@link com.holoyolostudios.colorvision.colorlib.view.ColorProgressBar}
+     * @param colorHexLabel  {@link android.widget.TextView}
+     * @param colorNameLabel {@link android.widget.TextView}
+     * @param sampleView     {@link android.view.View}
+     */
+    public ColorReadingPublisher(Handler handler, ColorNameCache colorNameCache,
+                                 ColorProgressBar rBar, ColorProgressBar gBar, ColorProgressBar bBar,
+                                 TextView colorHexLabel, TextView colorNameLabel, View sampleView) {
+        mHandler = handler;
+        mColorNameCache = colorNameCache;
+        mRBar = rBar;
+        mGBar = gBar;
+        mBBar = bBar;
+        mColorHexLabel = colorHexLabel;
+        mColorNameLabel = colorNameLabel;
+        mSampleView = sampleView;
+    }
+
+    /**
+     * Set the uniformity below which readings keep the previous name
+     *
+     * @param minUniformity {@link double}
+     */
+    public void setMinUniformity(double minUniformity) {
+        mMinUniformity = minUniformity;
+    }
+
+    /**
+     * Publish a reading, callable from any thread. The color name is matched on the calling
+     * thread, so this is meant to be called from the analysis thread.
+     *
+     * @param color {@link com.holoyolostudios.colorvision.colorlib.util.ColorAnalyzerUtil.RGBColor}
+     */
+    public void publish(ColorAnalyzerUtil.RGBColor color) {
+        publish(color, Double.NaN);
+    }
+
+    /**
+     * Publish a reading with the uniformity of its area, see {@link #publish(ColorAnalyzerUtil.RGBColor)}
+     *
+     * @param color      {@link com.holoyolostudios.colorvision.colorlib.util.ColorAnalyzerUtil.RGBColor}
+     * @param uniformity {@link double} NaN if unknown, which never gates the name
+     */
+    public synchronized void publish(ColorAnalyzerUtil.RGBColor color, double uniformity) {
+        ColorNameCache.Snapshot names = null;
+        int index = -1;
+        if (uniformity < mMinUniformity) {
+            names = mPublishedNames;
+            index = mPublishedIndex;
+        } else if (mColorNameCache != null && (names = mColorNameCache.getSnapshot()) != null) {
+            index = names.findNearest(color.getRed(), color.getGreen(), color.getBlue());
+        }
+
+        mPublishedNames = names;
+        mPublishedIndex = index;
+
+        // The index only means something in the snapshot it was found in, so both go out in
+        // the same swap. The reading we get back is either spent or one the UI never got to.
+        Reading back = mBack;
+        back.mPixel = color.getPixel();
+        back.mIndex = index;
+        back.mNames = names;
+        back.mFresh = true;
+        back = mSlot.getAndSet(back);
+        back.mFresh = false;
+        back.mNames = null;
+        mBack = back;
+        if (mPending.compareAndSet(false, true)) {
+            long now = SystemClock.uptimeMillis();
+            mHandler.postAtTime(this, Math.max(now, mLastUpdateTime + MIN_UPDATE_INTERVAL_MS));
+        }
+    }
+
+    /**
+     * Drop a pending update, call when readings stop
+     */
+    public void cancel() {
+        mHandler.removeCallbacks(this);
+        mPending.set(false);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void run() {
+        // Clear first so a reading published while the views update schedules another run
+        mPending.set(false);
+        mLastUpdateTime = SystemClock.uptimeMillis();
+        Reading latest = mSlot.getAndSet(mFront);
+        mFront = latest;
+        if (!latest.mFresh) {
+            return;
+        }
+        latest.mFresh = false;
+        int pixel = latest.mPixel;
+        int index = latest.mIndex;
+        ColorNameCache.Snapshot names = latest.mNames;
+
+        int red = Color.red(pixel);
+        if (red != mShownRed) {
+            mRBar.setColorProgress(red);
+            mShownRed = red;
+        }
+        int green = Color.green(pixel);
+        if (green != mShownGreen) {
+            mGBar.setColorProgress(green);
+            mShownGreen = green;
+        }
+        int blue = Color.blue(pixel);
+        if (blue != mShownBlue) {
+            mBBar.setColorProgress(blue);
+            mShownBlue = blue;
+        }
+        if (pixel != mShownPixel) {
+            int length = ColorAnalyzerUtil.formatHexCode(pixel, mHexChars, 0);
+            mColorHexLabel.setText(mHexChars, 0, length);
+            mSampleView.setBackgroundColor(pixel);
+            mShownPixel = pixel;
+        }
+        if (index != mShownIndex || names != mShownNames) {
+            mColorNameLabel.setText((names != null) ? names.getColorName(index) : null);
+            mShownIndex = index;
+            mShownNames = names;
+        }
+    }
+
+    /**
+     * One published reading: the pixel, its palette index and the snapshot the index belongs to.
+     * Owned by whichever side last took it out of the slot.
+     */
+    private static final class Reading {
+
+        private int mPixel = 0;
+        private int mIndex = -1;
+        private ColorNameCache.Snapshot mNames = null;
+        private boolean mFresh = false;
+
+    }
+
+}
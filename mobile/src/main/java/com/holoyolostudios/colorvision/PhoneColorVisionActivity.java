@@ -40,7 +40,11 @@ import android.view.View;
 import android.widget.TextView;
 import com.holoyolostudios.colorvision.colorlib.colors.ColorNameCache;
 import com.holoyolostudios.colorvision.colorlib.util.ColorAnalyzerUtil;
+import com.holoyolostudios.colorvision.colorlib.util.FrameAnalyzer;
+import com.holoyolostudios.colorvision.colorlib.util.FrameDescriptor;
+import com.holoyolostudios.colorvision.colorlib.util.PreviewBufferPool;
 import com.holoyolostudios.colorvision.colorlib.view.ColorProgressBar;
+import com.holoyolostudios.colorvision.colorlib.view.ColorReadingPublisher;
 import com.holoyolostudios.colorvision.view.FlashButton;
 
 import java.io.IOException;
@@ -90,7 +94,10 @@ public class PhoneColorVisionActivity extends Activity
     private Camera mCamera = null;
     private Camera.Size mPreviewSize = null;
     private int mExpectedBytes = -1;
-    private byte[] PREVIEW_BUFFER = null;
+    private FrameDescriptor mFrameDescriptor = null;
+    private FrameAnalyzer mFrameAnalyzer = null;
+    private ColorReadingPublisher mColorReadingPublisher = null;
+    private PreviewBufferPool mPreviewBufferPool = new PreviewBufferPool();
     private int mHalfWidth = 0;
     private int mHalfHeight = 0;
     private boolean mFlashTorchSupported = false;
@@ -163,6 +170,21 @@ public class PhoneColorVisionActivity extends Activity
         setContentView(R.layout.activity_main);
         mAudioManager = (AudioManager) getSystemService(Context.AUDIO_SERVICE);
 
+        // Name preview frames through the quantized lookup table
+        if (mColorNameCacheInstance != null) {
+            mColorNameCacheInstance.setMatchMode(ColorNameCache.MATCH_MODE_LOOKUP_TABLE);
+        }
+
+        // Analyze preview frames off the camera callback thread
+        mFrameAnalyzer = new FrameAnalyzer(new FrameAnalyzer.OnFrameAnalyzedListener() {
+            @Override
+            public void onFrameAnalyzed(ColorAnalyzerUtil.RGBColor color) {
+                mColorReadingPublisher.publish(color, mFrameAnalyzer.getUniformity());
+            }
+        });
+        mFrameAnalyzer.setAverageMode(ColorAnalyzerUtil.AVERAGE_MODE_YUV);
+        mFrameAnalyzer.setComputeUniformity(true);
+
         // Setup the views
         mTextureView = (TextureView) findViewById(R.id.tv_camera_preview);
         mTextureView.setSurfaceTextureListener(this);
@@ -191,6 +213,10 @@ public class PhoneColorVisionActivity extends Activity
 //        mInfoRGBLabel = (TextView) findViewById(R.id.tv_info_rgb);
         mWhiteBalanceLabel = (TextView) findViewById(R.id.tv_wb_label);
 
+        // Coalesced UI updates for color readings
+        mColorReadingPublisher = new ColorReadingPublisher(sHandler, mColorNameCacheInstance,
+                mRBar, mGBar, mBBar, mColorHexLabel, mColorNameLabel, mSampleView);
+
         // Flash torch button
         mBtnFlashTorch = (FlashButton) findViewById(R.id.btn_flash_torch);
         mBtnFlashTorch.setVisibility(mFlashTorchSupported ? View.VISIBLE : View.GONE);
@@ -238,6 +264,7 @@ public class PhoneColorVisionActivity extends Activity
 
     public void onResume() {
         super.onResume();
+        mFrameAnalyzer.start();
         if (mSurfaceTexture != null) {
             startPreview(mSurfaceTexture);
         }
@@ -245,6 +272,12 @@ public class PhoneColorVisionActivity extends Activity
 
     public void onPause() {
         stopPreview();
+        mFrameAnalyzer.stop();
+        Log.d(TAG, mFrameAnalyzer.getGovernor().toString());
+        if (mColorNameCacheInstance != null && mColorNameCacheInstance.getMemoCache() != null) {
+            Log.d(TAG, mColorNameCacheInstance.getMemoCache().toString());
+        }
+        mColorReadingPublisher.cancel();
         super.onPause();
     }
 
@@ -253,14 +286,6 @@ public class PhoneColorVisionActivity extends Activity
         super.onDestroy();
     }
 
-    private String getColorName(int r, int g, int b) {
-        String colorName = null;
-        if (mColorNameCacheInstance != null && mColorNameCacheInstance.isInitialized()) {
-            colorName = mColorNameCacheInstance.getColorName(r, g, b);
-        }
-        return colorName;
-    }
-
     private Camera.Parameters setCameraParametersForPreview(Camera.Parameters params) {
         params.setPreviewFormat(ImageFormat.NV21);
 
@@ -343,15 +368,13 @@ public class PhoneColorVisionActivity extends Activity
                 mPreviewSize = p.getPreviewSize();
                 Log.d(TAG, "mPreviewSize.width: " + mPreviewSize.width);
                 Log.d(TAG, "mPreviewSize.height: " + mPreviewSize.height);
-                mExpectedBytes = mPreviewSize.width * mPreviewSize.height * 3 / 2;
-                ColorAnalyzerUtil.FRAME_WIDTH = mPreviewSize.width;
-                ColorAnalyzerUtil.FRAME_HEIGHT = mPreviewSize.height;
+                mFrameDescriptor = new FrameDescriptor(mPreviewSize.width, mPreviewSize.height);
+                mExpectedBytes = mFrameDescriptor.getBufferSize();
                 mHalfWidth = mPreviewSize.width / 2;
                 mHalfHeight = mPreviewSize.height / 2;
                 mCamera.setParameters(p);
                 mCamera.setPreviewCallbackWithBuffer(this);
-                PREVIEW_BUFFER = new byte[mExpectedBytes];
-                mCamera.addCallbackBuffer(PREVIEW_BUFFER);
+                mPreviewBufferPool.attach(mCamera, mFrameDescriptor);
                 setWhiteBalanceLabelText();
                 mCamera.setPreviewTexture(surface);
                 mCamera.startPreview();
@@ -366,6 +389,8 @@ public class PhoneColorVisionActivity extends Activity
         if (mCamera != null) {
             mCamera.stopPreview();
             mCamera.setPreviewCallbackWithBuffer(null);
+            mPreviewBufferPool.detach();
+            Log.d(TAG, mPreviewBufferPool.toString());
             mCamera.release();
             mCamera = null;
             mIsPreviewing = false;
@@ -415,20 +440,10 @@ public class PhoneColorVisionActivity extends Activity
 
     @Override
     public void onPreviewFrame(byte[] data, Camera camera) {
-        final ColorAnalyzerUtil.RGBColor color = ColorAnalyzerUtil.getAverageColor(data,
+        mPreviewBufferPool.onFrameDelivered(data);
+        mFrameAnalyzer.submit(mFrameDescriptor, data,
                 mHalfWidth - (mViewPort.getWidth() / 2), mHalfHeight - (mViewPort.getHeight() / 2), mHalfWidth + (mViewPort.getWidth() / 2), mHalfHeight + (mViewPort.getHeight() / 2));
-        sHandler.post(new Runnable() {
-            @Override
-            public void run() {
-                mRBar.setColorProgress(color.getRed());
-                mGBar.setColorProgress(color.getGreen());
-                mBBar.setColorProgress(color.getBlue());
-                mColorHexLabel.setText("#" + color.getHexCode().substring(2).toUpperCase());
-                mColorNameLabel.setText(getColorName(color.getRed(), color.getGreen(), color.getBlue()));
-                mSampleView.setBackgroundColor(color.getPixel());
-            }
-        });
-        camera.addCallbackBuffer(PREVIEW_BUFFER);
+        mPreviewBufferPool.recycle(camera, data);
     }
 
 